@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import jdk.nashorn.api.scripting.JSObject;
+import net.desertconsulting.mocharest.js.Deferred;
 
 /**
  * It defines RESTful engines.
@@ -139,6 +140,30 @@ public interface RestEngine {
     RestEngine options(String url, JSObject... parms) throws
             MalformedURLException;
 
+    /**
+     * Runs a Javascript function, with no arguments, on a worker thread of a
+     * bounded pool.
+     *
+     * @param fn function to be run
+     * @return a {@link Deferred} resolved with the function's result, settled
+     * as the {@link Deferred} returned by the function, or rejected with the
+     * error thrown by the function or if the pool is saturated
+     */
+    Deferred async(JSObject fn);
+
+    /**
+     * Registers a Javascript function, with no arguments, run once on a newly
+     * built engine before it serves any request, e.g. to prime caches or
+     * call the application's handlers so that they're compiled. When the
+     * function returns a {@link Deferred} the engine waits for it to be
+     * settled. If the function fails the engine isn't used: at startup the
+     * application fails to start, on reload the current engine is kept.
+     *
+     * @param fn function to be run
+     * @return it will return the object's instance for chaining.
+     */
+    RestEngine warmUp(JSObject fn);
+
     /**
      * Reads the content of a context's resource or a data-URI as {@link String}.
      * 
@@ -29,22 +29,43 @@ import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.script.ScriptException;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.WebApplicationException;
 import jdk.nashorn.api.scripting.JSObject;
 import jdk.nashorn.internal.runtime.Undefined;
+import net.desertconsulting.mocharest.js.AsyncExecutor;
+import net.desertconsulting.mocharest.js.Deferred;
 import net.desertconsulting.mocharest.request.MochaRequest;
 import net.desertconsulting.mocharest.request.MochaRequestHandler;
+import net.desertconsulting.mocharest.request.MochaRouter;
+import net.desertconsulting.mocharest.request.RouteCache;
+import net.desertconsulting.mocharest.request.RouteLimiter;
+import net.desertconsulting.mocharest.request.RouteLimiters;
+import net.desertconsulting.mocharest.request.RouteMatch;
 import net.desertconsulting.mocharest.response.MochaResponse;
 
 /**
@@ -53,8 +74,60 @@ import net.desertconsulting.mocharest.response.MochaResponse;
  */
 public class RestEngineImpl implements RestEngine {
 
+    /**
+     * Name of the context parameter setting the maximum number of entries of
+     * the route cache. The cache is disabled when the parameter is missing or
+     * not positive.
+     */
+    public final static String ROUTE_CACHE_SIZE_PARAM = "mocharest.routeCacheSize";
+
+    /**
+     * Name of the context parameter setting how long, in milliseconds, a
+     * response waits for the {@link Deferred} returned by a handler to be
+     * settled.
+     */
+    public final static String ASYNC_TIMEOUT_PARAM = "mocharest.asyncTimeout";
+
+    /**
+     * Default value of {@link #ASYNC_TIMEOUT_PARAM}.
+     */
+    public final static long DEFAULT_ASYNC_TIMEOUT = 30000;
+
+    /**
+     * Name of the context parameter setting the size, in bytes, above which
+     * request bodies are spilled to a temporary file instead of being held on
+     * the heap. A negative value disables spilling, the default
+     * is {@link MochaRequest#DEFAULT_SPILL_THRESHOLD}. Temporary files are
+     * written to the context's temporary directory and deleted when the
+     * response is complete.
+     */
+    public final static String SPILL_THRESHOLD_PARAM = "mocharest.spillThreshold";
+
+    /**
+     * Name of the context parameter setting the maximum size, in bytes, of
+     * the request bodies read by the handlers, larger bodies are refused with
+     * status 413. A negative value sets no limit, the default is
+     * {@link MochaRequest#DEFAULT_MAX_BODY_SIZE}.
+     */
+    public final static String MAX_BODY_SIZE_PARAM = "mocharest.maxBodySize";
+
+    private final static Runnable NO_COMPLETION = () -> {
+    };
+
     private final Map<String, List<MochaRequestHandler>> handlers;
+    private final Map<String, MochaRouter> routers;
+    private final Map<String, Map<String, RouteMatch>> staticRoutes;
     private final ServletContext context;
+    private volatile RouteCache routeCache;
+    private volatile JSObject jsonParser;
+    private volatile long asyncTimeout = DEFAULT_ASYNC_TIMEOUT;
+    private volatile AsyncExecutor asyncExecutor;
+    private final List<JSObject> warmUps = new CopyOnWriteArrayList<>();
+    private volatile long spillThreshold = MochaRequest.DEFAULT_SPILL_THRESHOLD;
+    private volatile long maxBodySize = MochaRequest.DEFAULT_MAX_BODY_SIZE;
+    private volatile Path spillDirectory;
+    private volatile Lock scriptLock;
+    private volatile RouteLimiters routeLimiters;
 
     /**
      * Initialize a new instance of {@link RestEngineImpl}.
@@ -67,7 +140,166 @@ public class RestEngineImpl implements RestEngine {
         handlers.put(PUT_METHOD, new ArrayList<>());
         handlers.put(HEAD_METHOD, new ArrayList<>());
         handlers.put(OPTIONS_METHOD, new ArrayList<>());
+        routers = new HashMap<>();
+        staticRoutes = new HashMap<>();
+        handlers.keySet().forEach(method -> {
+            routers.put(method, new MochaRouter());
+            // read by requests while handlers are registered
+            staticRoutes.put(method, new ConcurrentHashMap<>());
+        });
         this.context = context;
+        asyncExecutor = AsyncExecutor.get(context);
+        routeLimiters = RouteLimiters.get(context);
+
+        if (context != null) {
+            String cacheSize = context.getInitParameter(ROUTE_CACHE_SIZE_PARAM);
+            if (cacheSize != null) {
+                setRouteCacheSize(Integer.parseInt(cacheSize.trim()));
+            }
+            String timeout = context.getInitParameter(ASYNC_TIMEOUT_PARAM);
+            if (timeout != null) {
+                setAsyncTimeout(Long.parseLong(timeout.trim()));
+            }
+            String threshold = context.getInitParameter(SPILL_THRESHOLD_PARAM);
+            if (threshold != null) {
+                setSpillThreshold(Long.parseLong(threshold.trim()));
+            }
+            String maxSize = context.getInitParameter(MAX_BODY_SIZE_PARAM);
+            if (maxSize != null) {
+                setMaxBodySize(Long.parseLong(maxSize.trim()));
+            }
+            Object tempDir = context.getAttribute(ServletContext.TEMPDIR);
+            if (tempDir instanceof File) {
+                spillDirectory = ((File) tempDir).toPath();
+            }
+        }
+    }
+
+    /**
+     * Sets the maximum number of entries of the route cache, mapping a method
+     * and path to the resolved handler and the position of its path
+     * parameters. The cache only spares the matching, the path parameters are
+     * still converted for each request.
+     * @param size maximum number of entries, 0 or less disables the cache
+     */
+    public void setRouteCacheSize(int size) {
+        routeCache = size > 0 ? new RouteCache(size) : null;
+    }
+
+    /**
+     * Returns the route cache, if enabled.
+     * @return the route cache or {@code null} if it's disabled
+     */
+    public RouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    /**
+     * Sets how long a response waits for the {@link Deferred} returned by a
+     * handler to be settled.
+     * @param timeout timeout in milliseconds
+     */
+    public void setAsyncTimeout(long timeout) {
+        this.asyncTimeout = timeout;
+    }
+
+    /**
+     * Returns how long a response waits for the {@link Deferred} returned by
+     * a handler to be settled.
+     * @return timeout in milliseconds
+     */
+    public long getAsyncTimeout() {
+        return asyncTimeout;
+    }
+
+    /**
+     * Sets the size above which request bodies are spilled to a temporary
+     * file.
+     * @param threshold size in bytes, a negative value disables spilling
+     */
+    public void setSpillThreshold(long threshold) {
+        this.spillThreshold = threshold;
+    }
+
+    /**
+     * Returns the size above which request bodies are spilled to a temporary
+     * file.
+     * @return size in bytes, negative if spilling is disabled
+     */
+    public long getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * Sets the maximum size of the request bodies read by the handlers.
+     * @param size size in bytes, a negative value sets no limit
+     */
+    public void setMaxBodySize(long size) {
+        this.maxBodySize = size;
+    }
+
+    /**
+     * Returns the maximum size of the request bodies read by the handlers.
+     * @return size in bytes, negative if there's no limit
+     */
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * Sets the directory where spilled request bodies are written.
+     * @param directory a directory, {@code null} for the default
+     * temporary-file directory
+     */
+    public void setSpillDirectory(Path directory) {
+        this.spillDirectory = directory;
+    }
+
+    /**
+     * Returns the directory where spilled request bodies are written.
+     * @return a directory, {@code null} for the default temporary-file
+     * directory
+     */
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Sets the executor running the functions passed to
+     * {@link #async(jdk.nashorn.api.scripting.JSObject)}.
+     * @param asyncExecutor executor of asynchronous functions
+     */
+    public void setAsyncExecutor(AsyncExecutor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Returns the executor running the functions passed to
+     * {@link #async(jdk.nashorn.api.scripting.JSObject)}, by default the one
+     * shared by the web application.
+     * @return executor of asynchronous functions
+     */
+    public AsyncExecutor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Sets the Javascript function parsing JSON request bodies for handlers
+     * asking for native bodies, usually the engine's {@code JSON.parse}.
+     * @param jsonParser Javascript function parsing a JSON string
+     */
+    public void setJsonParser(JSObject jsonParser) {
+        this.jsonParser = jsonParser;
+    }
+
+    /**
+     * Returns the Javascript function parsing JSON request bodies for handlers
+     * asking for native bodies.
+     * @return the Javascript function parsing JSON request bodies or
+     * {@code null} if it isn't set
+     */
+    public JSObject getJsonParser() {
+        return jsonParser;
     }
 
     @Override
@@ -105,6 +337,65 @@ public class RestEngineImpl implements RestEngine {
         return this;
     }
 
+    @Override
+    public RestEngine warmUp(JSObject fn) {
+        if (fn == null || !fn.isFunction()) {
+            throw new IllegalArgumentException("fn");
+        }
+        warmUps.add(fn);
+        return this;
+    }
+
+    /**
+     * Runs, in order, the functions registered through
+     * {@link #warmUp(jdk.nashorn.api.scripting.JSObject)}, waiting up to the
+     * async timeout for the {@link Deferred}s they return.
+     *
+     * @throws ScriptException a function has thrown an error or returned a
+     * {@link Deferred} rejected, or not settled in time
+     */
+    public void runWarmUp() throws ScriptException {
+        for (JSObject fn : warmUps) {
+            Object val = fn.call(null);
+            if (val instanceof CompletionStage) {
+                val = Deferred.from((CompletionStage<?>) val);
+            }
+            if (val instanceof Deferred) {
+                CountDownLatch latch = new CountDownLatch(1);
+                Object[] outcome = new Object[2];
+                ((Deferred) val).addListener((resolved, result) -> {
+                    outcome[0] = resolved;
+                    outcome[1] = result;
+                    latch.countDown();
+                });
+                try {
+                    if (!latch.await(asyncTimeout, TimeUnit.MILLISECONDS)) {
+                        throw new ScriptException("warm-up timed out");
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new ScriptException("warm-up interrupted");
+                }
+                if (!Boolean.TRUE.equals(outcome[0])) {
+                    ScriptException ex = new ScriptException("warm-up failed: "
+                            + outcome[1]);
+                    if (outcome[1] instanceof Throwable) {
+                        ex.initCause((Throwable) outcome[1]);
+                    }
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    @Override
+    public Deferred async(JSObject fn) {
+        if (fn == null || !fn.isFunction()) {
+            throw new IllegalArgumentException("fn");
+        }
+        return asyncExecutor.submit(() -> fn.call(null));
+    }
+
     @Override
     public String getFileContent(String path) throws MalformedURLException,
             IOException, URISyntaxException {
@@ -112,9 +403,10 @@ public class RestEngineImpl implements RestEngine {
         if (reader != null) {
             try (BufferedReader breader = new BufferedReader(reader);
                     StringWriter writer = new StringWriter()) {
-                String line;
-                while ((line = breader.readLine()) != null) {
-                    writer.append(line);
+                char[] buffer = new char[4096];
+                int read;
+                while ((read = breader.read(buffer)) >= 0) {
+                    writer.write(buffer, 0, read);
                 }
                 return writer.toString();
             }
@@ -160,38 +452,276 @@ public class RestEngineImpl implements RestEngine {
      * @param response http servlet restponse to send a response
      */
     public void handle(HttpServletRequest request, HttpServletResponse response) {
+        handle(request, response, NO_COMPLETION);
+    }
+
+    /**
+     * Run handler for a given request, notifying when the response is
+     * complete: when this method returns or throws, or later, when the
+     * {@link Deferred} returned by the handler is settled or times out.
+     * 
+     * @param request http servlet request to be handled
+     * @param response http servlet restponse to send a response
+     * @param onComplete run once when the response is complete, or has
+     * failed
+     */
+    public void handle(HttpServletRequest request, HttpServletResponse response,
+            Runnable onComplete) {
+        handle(request, response, null, null, onComplete);
+    }
+
+    /**
+     * Run handler for a given request, already routed by the caller, whose
+     * route's slot has already been taken, see
+     * {@link #route(HttpServletRequest)}. The slot is given back when the
+     * response is complete.
+     * 
+     * @param request http servlet request to be handled
+     * @param response http servlet restponse to send a response
+     * @param routed match of the request, found by this engine or by another
+     * one running the same script, or {@code null} to route it here
+     * @param acquired limiter of the request's route, already acquired, or
+     * {@code null} to acquire it here
+     * @param onComplete run once when the response is complete, or has
+     * failed
+     */
+    public void handle(HttpServletRequest request, HttpServletResponse response,
+            RouteMatch routed, RouteLimiter acquired, Runnable onComplete) {
+        Lock lock = scriptLock;
+        if (lock != null) {
+            lock.lock();
+        }
+        try {
+            handle(request, response, routed, acquired, onComplete, lock);
+        } finally {
+            if (lock != null) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void handle(HttpServletRequest request,
+            HttpServletResponse response, RouteMatch routed,
+            RouteLimiter acquired, Runnable onComplete, Lock lock) {
+        // the slot, a spilled body and the caller's resources are held until
+        // the response is complete
+        Release release = new Release(onComplete);
+        release.limiter = acquired;
+        boolean async = false;
+        try {
+            // Retrieving config and initializing MochaRequest will perform
+            // all the required request validation
+            RouteMatch match = routed != null ? adopt(request, routed)
+                    : getConfig(request);
+            MochaRequestHandler handler = match.getHandler();
+            MochaRequest req = new MochaRequest(request, match, jsonParser);
+            req.setSpillThreshold(spillThreshold);
+            req.setMaxBodySize(maxBodySize);
+            req.setSpillDirectory(spillDirectory);
+            release.request = req;
 
-        // Retrieving config and initializing MochaRequest will perform
-        // all the required request validation
-        MochaRequestHandler handler = getConfig(request);
-        MochaRequest req = new MochaRequest(request, handler);
-
-        // If the found handler doesn't have an handling function, then just ignore it.
-        // The handler has already done data validation and that's enough.
-        if (handler.function != null) {
-            MochaResponse resp = new MochaResponse(response, req);
-            Object val = handler.function.call(null, req, resp, req.
-                    getParametersMap(),
-                    req.getPathParameterMap());
-            if (!(val instanceof Undefined)) {
+            // If the found handler doesn't have an handling function, then just ignore it.
+            // The handler has already done data validation and that's enough.
+            if (handler.function != null || handler.getOnRecord() != null) {
+                RouteLimiter limiter = handler.getLimiter();
+                if (acquired == null && limiter != null) {
+                    if (!limiter.acquire()) {
+                        throw new ServiceUnavailableException(
+                                (long) limiter.getRetryAfter());
+                    }
+                    release.limiter = limiter;
+                }
+                MochaResponse resp = new MochaResponse(response, req);
+                Object val = null;
+                if (handler.getOnRecord() != null) {
+                    // handlers without a function respond with a summary
+                    val = Collections.singletonMap("records", req.
+                            forEachRecord(handler.getOnRecord()));
+                }
+                if (handler.function != null) {
+                    val = handler.function.call(null, req, resp, req.
+                            getParametersMap(),
+                            req.getPathParameterMap());
+                }
+                if (val instanceof CompletionStage) {
+                    val = Deferred.from((CompletionStage<?>) val);
+                }
+                if (val instanceof Deferred) {
+                    async = true;
+                    handleDeferred(request, resp, (Deferred) val, release,
+                            lock);
+                } else {
+                    send(resp, val);
+                }
+            }
+        } finally {
+            if (!async) {
+                release.run();
+            }
+        }
+    }
+
+    /**
+     * Sends the result of a handler.
+     *
+     * @param resp response object
+     * @param val value returned by the handler
+     */
+    private void send(MochaResponse resp, Object val) {
+        if (!(val instanceof Undefined)) {
+            try {
+                resp.send(val);
+            } catch (IOException ex) {
                 try {
-                    resp.send(val);
-                } catch (IOException ex) {
+                    Logger.getLogger(RestEngineImpl.class.getName()).log(
+                            Level.SEVERE, null, ex);
+                    resp.sendError(500, ex.toString());
+                } catch (IOException ex1) {
+                    Logger.getLogger(RestEngineImpl.class.getName()).log(
+                            Level.SEVERE, null, ex1);
+                }
+            }
+        } else {
+            resp.commit();
+        }
+    }
+
+    /**
+     * Sends the result of a handler returning a {@link Deferred}, or a
+     * {@link CompletionStage} adapted to one, once it's settled. If the
+     * request supports asynchronous processing the container thread is
+     * released right away, otherwise it waits for the {@link Deferred} to be
+     * settled. Either way the response is an error if it isn't settled within
+     * the async timeout.
+     *
+     * @param request http servlet request being handled
+     * @param resp response object
+     * @param deferred value returned by the handler
+     * @param onComplete run once when the response is complete, or has
+     * failed
+     * @param lock script lock held by the caller, released while waiting,
+     * or {@code null}
+     */
+    private void handleDeferred(HttpServletRequest request, MochaResponse resp,
+            Deferred deferred, Runnable onComplete, Lock lock) {
+        AtomicBoolean done = new AtomicBoolean();
+        if (request.isAsyncSupported()) {
+            AsyncContext async;
+            try {
+                async = request.startAsync();
+            } catch (RuntimeException ex) {
+                onComplete.run();
+                throw ex;
+            }
+            async.setTimeout(asyncTimeout);
+            async.addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                    if (done.compareAndSet(false, true)) {
+                        try {
+                            sendTimeout(resp);
+                            async.complete();
+                        } finally {
+                            onComplete.run();
+                        }
+                    }
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    if (done.compareAndSet(false, true)) {
+                        onComplete.run();
+                    }
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+            deferred.addListener((resolved, result) -> {
+                if (done.compareAndSet(false, true)) {
+                    // it may be settled by a thread not holding the lock
+                    if (lock != null) {
+                        lock.lock();
+                    }
                     try {
-                        Logger.getLogger(RestEngineImpl.class.getName()).log(
-                                Level.SEVERE, null, ex);
-                        resp.sendError(500, ex.toString());
-                    } catch (IOException ex1) {
-                        Logger.getLogger(RestEngineImpl.class.getName()).log(
-                                Level.SEVERE, null, ex1);
+                        settle(resp, resolved, result);
+                    } finally {
+                        if (lock != null) {
+                            lock.unlock();
+                        }
+                        try {
+                            async.complete();
+                        } finally {
+                            onComplete.run();
+                        }
                     }
                 }
-            } else {
-                resp.commit();
+            });
+        } else {
+            CountDownLatch latch = new CountDownLatch(1);
+            Object[] outcome = new Object[2];
+            deferred.addListener((resolved, result) -> {
+                outcome[0] = resolved;
+                outcome[1] = result;
+                latch.countDown();
+            });
+            try {
+                // timer callbacks settling the deferred need the lock
+                boolean settled;
+                if (lock != null) {
+                    lock.unlock();
+                }
+                try {
+                    settled = latch.await(asyncTimeout, TimeUnit.MILLISECONDS);
+                } finally {
+                    if (lock != null) {
+                        lock.lock();
+                    }
+                }
+                if (settled) {
+                    settle(resp, (Boolean) outcome[0], outcome[1]);
+                } else {
+                    sendTimeout(resp);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                sendTimeout(resp);
+            } finally {
+                onComplete.run();
+            }
+        }
+    }
+
+    private void settle(MochaResponse resp, boolean resolved, Object result) {
+        if (resolved) {
+            send(resp, result);
+        } else {
+            int status = result instanceof WebApplicationException
+                    ? ((WebApplicationException) result).getResponse().
+                    getStatus() : 500;
+            try {
+                resp.sendError(status, String.valueOf(result));
+            } catch (IOException ex) {
+                Logger.getLogger(RestEngineImpl.class.getName()).log(
+                        Level.SEVERE, null, ex);
             }
         }
     }
 
+    private void sendTimeout(MochaResponse resp) {
+        try {
+            resp.sendError(503, "deferred response timed out");
+        } catch (IOException ex) {
+            Logger.getLogger(RestEngineImpl.class.getName()).log(
+                    Level.SEVERE, null, ex);
+        }
+    }
+
     /**
      * Register a new handler for the given method-url pair.
      * @param method one of GET|POST|PUT|HEAD|OPTIONS
@@ -211,29 +741,124 @@ public class RestEngineImpl implements RestEngine {
 
         if (parms != null) {
             MochaRequestHandler handler = new MochaRequestHandler(url, parms);
-            handlers.get(method).add(handler);
+            if (handler.getLimiter() != null) {
+                handler.setLimiter(routeLimiters.register(method, handler.
+                        getPath(), handler.getLimiter()));
+            }
+            List<MochaRequestHandler> registered = handlers.get(method);
+            handler.setPosition(registered.size());
+            registered.add(handler);
+            MochaRouter router = routers.get(method);
+            router.add(handler);
+
+            // Literal paths are resolved once here and then served by a
+            // single lookup. The router's answer already accounts for any
+            // earlier registered handler shadowing this one.
+            if (handler.isLiteral()) {
+                staticRoutes.get(method).putIfAbsent(handler.getPath(),
+                        router.find(handler.getPath()));
+            }
+
+            RouteCache cache = routeCache;
+            if (cache != null) {
+                cache.clear();
+            }
         } else {
             throw new IllegalArgumentException("handler");
         }
     }
 
+    /**
+     * Routes a request before handling it, if any route has a limit, so that
+     * a slot can be taken before committing resources to the request, see
+     * {@link #getLimiter(RouteMatch)}. The match is then passed to
+     * {@link #handle(HttpServletRequest, HttpServletResponse, RouteMatch, RouteLimiter, Runnable)},
+     * of this engine or of another one running the same script, which doesn't
+     * route the request again.
+     * 
+     * @param request servlet request
+     * @return the match or {@code null} if no route has a limit
+     * @throws NotFoundException no handlers found for the given request
+     * @throws BadRequestException the request comes with an unsupported method
+     */
+    public RouteMatch route(HttpServletRequest request) {
+        if (routeLimiters.getLimiters().isEmpty()) {
+            return null;
+        }
+        return getConfig(request);
+    }
+
+    /**
+     * Returns the limiter of the route a request has been matched to.
+     * 
+     * @param match match of the request
+     * @return the limiter or {@code null} if the route has none
+     */
+    public RouteLimiter getLimiter(RouteMatch match) {
+        MochaRequestHandler handler = match.getHandler();
+        return handler.function != null || handler.getOnRecord() != null
+                ? handler.getLimiter() : null;
+    }
+
+    /**
+     * Returns the match of this engine's handler for a request routed by an
+     * engine running the same script, where the handler's peer has been
+     * registered at the same position. The request is routed again if the
+     * engines' handlers differ.
+     * 
+     * @param request servlet request
+     * @param routed match of the request
+     * @return the match of this engine's handler
+     */
+    private RouteMatch adopt(HttpServletRequest request, RouteMatch routed) {
+        MochaRequestHandler handler = routed.getHandler();
+        List<MochaRequestHandler> registered = handlers.get(request.
+                getMethod());
+        int position = handler.getPosition();
+        if (registered != null && position < registered.size()) {
+            MochaRequestHandler peer = registered.get(position);
+            if (peer == handler) {
+                return routed;
+            }
+            if (peer.getPath().equals(handler.getPath())) {
+                return routed.withHandler(peer);
+            }
+        }
+        return getConfig(request);
+    }
+
     /**
      * Retrieves the first handler matching the given request.
      * 
      * @param request servlet request
-     * @return a handler for a given request
+     * @return the match of the first handler for a given request
      * @throws NotFoundException no handlers found for the given request
      * @throws BadRequestException the request comes with an unsupported method
      */
-    private MochaRequestHandler getConfig(HttpServletRequest request) {
+    private RouteMatch getConfig(HttpServletRequest request) {
         String path = request.getPathInfo();
         String method = request.getMethod();
-        List<MochaRequestHandler> methodHandlers = handlers.get(method);
-        if (methodHandlers != null) {
-            Optional<MochaRequestHandler> h = methodHandlers.stream()
-                    .filter(handler -> handler.getPathPattern().matcher(path).matches()).findFirst();
-            if (h.isPresent()) {
-                return h.get();
+        MochaRouter router = routers.get(method);
+        if (router != null) {
+            RouteMatch match = path != null ? staticRoutes.get(method).get(
+                    path) : null;
+            if (match == null) {
+                RouteCache cache = routeCache;
+                if (cache != null) {
+                    match = cache.get(method, path);
+                }
+                if (match == null) {
+                    // a handler registered meanwhile makes the match stale
+                    long generation = cache != null ? cache.getGeneration()
+                            : 0;
+                    match = router.find(path);
+                    if (match != null && cache != null) {
+                        cache.put(method, match, generation);
+                    }
+                }
+            }
+            if (match != null) {
+                return match;
             }
             throw new NotFoundException();
         } else {
@@ -249,4 +874,69 @@ public class RestEngineImpl implements RestEngine {
     Map<String, List<MochaRequestHandler>> getHandlers() {
         return handlers;
     }
+
+    /**
+     * Sets a lock taken while handling a request, so that the request's
+     * Javascript code doesn't overlap with the other code holding it, e.g.
+     * timer callbacks. The lock is released while waiting for a
+     * {@link Deferred} to be settled.
+     * @param lock lock taken while handling requests, {@code null} to take
+     * none
+     */
+    public void setScriptLock(Lock lock) {
+        scriptLock = lock;
+    }
+
+    /**
+     * Sets the registry the limiters of the routes are shared through. It
+     * must be called before any route is registered.
+     * @param limiters registry of the route limiters
+     */
+    public void setRouteLimiters(RouteLimiters limiters) {
+        routeLimiters = limiters;
+    }
+
+    /**
+     * Lists the limiters of the routes of the web application, shared by all
+     * its engines, to monitor the requests they serve and reject. The same
+     * map is available through the {@link RouteLimiters#ATTRIBUTE} context
+     * attribute.
+     * @return a read-only view of the limiters, keyed by method and URL
+     * pattern, e.g. {@code "GET /items/{id:int}"}
+     */
+    public Map<String, RouteLimiter> getRouteLimiters() {
+        return routeLimiters.getLimiters();
+    }
+
+    /**
+     * Gives back the slot of a {@link RouteLimiter}, deletes the spilled body
+     * of the request and runs the caller's completion callback, once.
+     */
+    private static class Release implements Runnable {
+
+        private final Runnable onComplete;
+        private final AtomicBoolean released = new AtomicBoolean();
+        volatile RouteLimiter limiter;
+        volatile MochaRequest request;
+
+        Release(Runnable onComplete) {
+            this.onComplete = onComplete;
+        }
+
+        @Override
+        public void run() {
+            if (released.compareAndSet(false, true)) {
+                try {
+                    if (limiter != null) {
+                        limiter.release();
+                    }
+                    if (request != null) {
+                        request.releaseBody();
+                    }
+                } finally {
+                    onComplete.run();
+                }
+            }
+        }
+    }
 }
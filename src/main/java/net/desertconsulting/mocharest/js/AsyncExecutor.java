@@ -0,0 +1,234 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.js;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.ServletContext;
+import javax.ws.rs.ServiceUnavailableException;
+
+/**
+ * Bounded pool of worker threads running tasks on behalf of Javascript
+ * handlers, each task settling a {@link Deferred}. When all the threads are
+ * busy and the queue is full, tasks are refused and their {@link Deferred} is
+ * rejected with a {@link ServiceUnavailableException}. Idle threads are
+ * released after a while.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class AsyncExecutor {
+
+    /**
+     * Name of the context parameter setting the number of worker threads.
+     * Defaults to the number of available processors.
+     */
+    public final static String THREADS_PARAM = "mocharest.asyncThreads";
+
+    /**
+     * Name of the context parameter setting how many tasks can wait for a
+     * worker thread. Defaults to {@link #DEFAULT_QUEUE_SIZE}.
+     */
+    public final static String QUEUE_SIZE_PARAM = "mocharest.asyncQueueSize";
+
+    /**
+     * Default value of {@link #QUEUE_SIZE_PARAM}.
+     */
+    public final static int DEFAULT_QUEUE_SIZE = 1000;
+
+    private final static String ATTRIBUTE = AsyncExecutor.class.getName();
+    private final static long KEEP_ALIVE = 60;
+    private final static AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * Initialize a new instance of {@link AsyncExecutor}.
+     *
+     * @param threads number of worker threads
+     * @param queueSize number of tasks that can wait for a worker thread
+     */
+    public AsyncExecutor(int threads, int queueSize) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads");
+        }
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("queueSize");
+        }
+        ThreadFactory factory = r -> {
+            Thread rv = new Thread(r, "mocharest-async-" + THREAD_COUNT.
+                    incrementAndGet());
+            rv.setDaemon(true);
+            return rv;
+        };
+        executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), factory);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the executor shared by the engines of a web application,
+     * creating it from the context parameters {@link #THREADS_PARAM} and
+     * {@link #QUEUE_SIZE_PARAM} the first time. The executor is stored as a
+     * context attribute.
+     *
+     * @param context servlet context, if {@code null} an executor shared by
+     * all the engines created without a context is returned
+     * @return the executor of the web application
+     */
+    public static AsyncExecutor get(ServletContext context) {
+        if (context == null) {
+            return Shared.INSTANCE;
+        }
+        synchronized (AsyncExecutor.class) {
+            Object rv = context.getAttribute(ATTRIBUTE);
+            if (rv instanceof AsyncExecutor) {
+                return (AsyncExecutor) rv;
+            }
+            String threads = context.getInitParameter(THREADS_PARAM);
+            String queueSize = context.getInitParameter(QUEUE_SIZE_PARAM);
+            AsyncExecutor executor = new AsyncExecutor(threads != null
+                    ? Integer.parseInt(threads.trim()) : defaultThreads(),
+                    queueSize != null ? Integer.parseInt(queueSize.trim())
+                            : DEFAULT_QUEUE_SIZE);
+            context.setAttribute(ATTRIBUTE, executor);
+            return executor;
+        }
+    }
+
+    /**
+     * Shuts down the executor shared by the engines of a web application, if
+     * any.
+     *
+     * @param context servlet context
+     */
+    public static void shutdown(ServletContext context) {
+        synchronized (AsyncExecutor.class) {
+            Object executor = context.getAttribute(ATTRIBUTE);
+            if (executor instanceof AsyncExecutor) {
+                context.removeAttribute(ATTRIBUTE);
+                ((AsyncExecutor) executor).shutdown();
+            }
+        }
+    }
+
+    private static int defaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Runs a task on a worker thread.
+     *
+     * @param task task to be run
+     * @return a new {@link Deferred} resolved with the task's result, or
+     * settled as the {@link Deferred} or {@link CompletionStage} returned by
+     * the task, rejected with the
+     * exception thrown by the task or if the task is refused
+     */
+    public Deferred submit(Callable<?> task) {
+        Deferred rv = new Deferred();
+        try {
+            executor.execute(() -> {
+                Object result;
+                try {
+                    result = task.call();
+                } catch (Exception ex) {
+                    rv.reject(ex);
+                    return;
+                }
+                if (result instanceof CompletionStage) {
+                    result = Deferred.from((CompletionStage<?>) result);
+                }
+                if (result instanceof Deferred) {
+                    ((Deferred) result).addListener((resolved, value) -> {
+                        if (resolved) {
+                            rv.resolve(value);
+                        } else {
+                            rv.reject(value);
+                        }
+                    });
+                } else {
+                    rv.resolve(result);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            rejections.increment();
+            rv.reject(new ServiceUnavailableException());
+        }
+        return rv;
+    }
+
+    /**
+     * Stops accepting tasks, the ones already accepted are run. The executor
+     * shared by the engines created without a servlet context can't be shut
+     * down.
+     */
+    public void shutdown() {
+        if (this != Shared.INSTANCE) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Number of worker threads.
+     * @return number of worker threads
+     */
+    public int getThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Number of threads running a task.
+     * @return number of threads running a task
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Number of tasks waiting for a worker thread.
+     * @return number of tasks waiting for a worker thread
+     */
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Number of tasks refused.
+     * @return number of tasks refused
+     */
+    public long getRejectedCount() {
+        return rejections.sum();
+    }
+
+    /**
+     * Executor of the engines created without a servlet context, e.g.
+     * embedded or in tests, created on first use. It's never shut down: its
+     * threads are daemons and are released once idle.
+     */
+    private static class Shared {
+
+        final static AsyncExecutor INSTANCE = new AsyncExecutor(
+                defaultThreads(), DEFAULT_QUEUE_SIZE);
+    }
+}
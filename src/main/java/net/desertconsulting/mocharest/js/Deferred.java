@@ -15,10 +15,11 @@
  */
 package net.desertconsulting.mocharest.js;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.function.Consumer;
-import java.util.function.Function;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import jdk.nashorn.api.scripting.JSObject;
 import jdk.nashorn.internal.runtime.Undefined;
 
@@ -26,37 +27,52 @@ import jdk.nashorn.internal.runtime.Undefined;
  * A
  * <a href="https://api.jquery.com/category/deferred-object/">JQuery.deferred</a>
  * inspired class for deferred operations.
+ * <p>
+ * It's safe to resolve, reject and register handlers from different threads:
+ * the state is held by a single atomic reference, either the stack of the
+ * callbacks waiting for the outcome or the outcome itself, and it's only
+ * changed by compare-and-set. Callbacks are run in registration order.
+ * <p>
+ * Callbacks are run by a per-thread loop rather than by nested calls: settling
+ * a {@link Deferred} from a callback queues its callbacks, which run once the
+ * current one returns. Chains of any length are therefore settled with a
+ * constant stack depth, before the outermost {@code resolve}, {@code reject}
+ * or registration returns.
  *
  * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
  */
 public class Deferred {
 
-    private boolean resolved = false;
-    private Object resolvedResult;
+    private final static ThreadLocal<Trampoline> TRAMPOLINE = ThreadLocal.
+            withInitial(Trampoline::new);
 
-    private boolean rejected = false;
-    private Object rejectedResult;
-
-    private JSObject doneHandler;
-    private JSObject failHandler;
-
-    private Deferred parent;
-    private List<Deferred> children;
+    /**
+     * {@code null} while pending without callbacks, the top {@link Callback}
+     * of the stack while pending, an {@link Outcome} once settled.
+     */
+    private final AtomicReference<Object> state = new AtomicReference<>();
 
     /**
-     * Initialize a new instance of {@link Deferred}.
+     * Java callback notified when a {@link Deferred} is settled.
      */
-    public Deferred() {
-        children = new ArrayList<>();
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Called once the {@link Deferred} is either resolved or rejected and
+         * the handlers registered before have run.
+         *
+         * @param resolved {@code true} if the {@link Deferred} has been
+         * resolved, {@code false} if it has been rejected
+         * @param result result of the {@link Deferred}
+         */
+        void settled(boolean resolved, Object result);
     }
 
     /**
-     * Initialize a new instance of {@link Deferred}, setting {@link parent} as
-     * its parent.
+     * Initialize a new instance of {@link Deferred}.
      */
-    private Deferred(Deferred parent) {
-        this();
-        this.parent = parent;
+    public Deferred() {
     }
 
     /**
@@ -66,15 +82,7 @@ public class Deferred {
      * handlers.
      */
     public void resolve(Object result) {
-        if (!resolved && !rejected) {
-            resolved = true;
-            resolvedResult = result;
-
-            rejected = false;
-            rejectedResult = null;
-
-            runHandlers(null);
-        }
+        settle(true, result);
     }
 
     /**
@@ -84,16 +92,27 @@ public class Deferred {
      * handlers.
      */
     public void reject(Object result) {
-        if (!resolved && !rejected) {
-
-            rejected = true;
-            rejectedResult = result;
+        settle(false, result);
+    }
 
-            resolved = false;
-            resolvedResult = null;
+    /**
+     * Whether the {@link Deferred} has been resolved.
+     *
+     * @return {@code true} if the {@link Deferred} has been resolved
+     */
+    public boolean isResolved() {
+        Object current = state.get();
+        return current instanceof Outcome && ((Outcome) current).resolved;
+    }
 
-            runHandlers(null);
-        }
+    /**
+     * Whether the {@link Deferred} has been rejected.
+     *
+     * @return {@code true} if the {@link Deferred} has been rejected
+     */
+    public boolean isRejected() {
+        Object current = state.get();
+        return current instanceof Outcome && !((Outcome) current).resolved;
     }
 
     /**
@@ -101,20 +120,11 @@ public class Deferred {
      * resolved.
      *
      * @param handler the handler to be registered
-     * @return a newly created {@link Deferred} object
+     * @return a newly created {@link Deferred} object, resolved with the
+     * handler's result or rejected as this one is
      */
     public Deferred done(JSObject handler) {
-        if (handler.isFunction()) {
-            doneHandler = handler;
-
-            Deferred rv = new Deferred(this);
-            children.add(rv);
-            if (resolved) {
-                rv.resolve(resolvedResult);
-            }
-            return rv;
-        }
-        throw new IllegalArgumentException("handler");
+        return then(handler, true, false);
     }
 
     /**
@@ -122,22 +132,11 @@ public class Deferred {
      * rejected.
      *
      * @param handler the handler to be registered
-     * @return the newly created {@link Deferred} object
+     * @return the newly created {@link Deferred} object, rejected with the
+     * handler's result or resolved as this one is
      */
     public Deferred fail(JSObject handler) {
-
-        if (handler.isFunction()) {
-            failHandler = handler;
-
-            Deferred rv = new Deferred(this);
-            children.add(rv);
-
-            if (rejected) {
-                rv.reject(rejectedResult);
-            }
-            return rv;
-        }
-        throw new IllegalArgumentException("handler");
+        return then(handler, false, true);
     }
 
     /**
@@ -145,100 +144,435 @@ public class Deferred {
      * resolved or rejected.
      *
      * @param handler the handler to be registered
-     * @return the newly created {@link Deferred} object
+     * @return the newly created {@link Deferred} object, settled as this one
+     * with the handler's result
      */
     public Deferred always(JSObject handler) {
+        return then(handler, true, true);
+    }
 
-        if (handler.isFunction()) {
-            doneHandler = handler;
-            failHandler = handler;
+    /**
+     * Registers a Java listener notified when this {@link Deferred} is
+     * settled, right away if it already is.
+     *
+     * @param listener the listener to be registered
+     */
+    public void addListener(Listener listener) {
+        push(new ListenerCallback(listener));
+    }
 
-            Deferred rv = new Deferred(this);
-            children.add(rv);
+    /**
+     * Same as {@link #all(java.lang.Object...)}, named after
+     * {@code jQuery.when}.
+     *
+     * @param values {@link Deferred}s or plain values, or a single Javascript
+     * array of them
+     * @return a new {@link Deferred}
+     */
+    public static Deferred when(Object... values) {
+        return all(values);
+    }
+
+    /**
+     * Waits for all the given values. Plain values count as resolved.
+     *
+     * @param values {@link Deferred}s or plain values, or a single Javascript
+     * array of them
+     * @return a new {@link Deferred} resolved with the array of the results,
+     * in the given order, when all the {@link Deferred}s are resolved, or
+     * rejected as the first one rejected
+     */
+    public static Deferred all(Object... values) {
+        Object[] items = expand(values);
+        Deferred rv = new Deferred();
+        Object[] results = new Object[items.length];
+        AtomicInteger remaining = new AtomicInteger(items.length + 1);
+        for (int i = 0; i < items.length; i++) {
+            int index = i;
+            whenSettled(items[i], (resolved, result) -> {
+                if (!resolved) {
+                    rv.reject(result);
+                } else {
+                    results[index] = result;
+                    if (remaining.decrementAndGet() == 0) {
+                        rv.resolve(results);
+                    }
+                }
+            });
+        }
+        if (remaining.decrementAndGet() == 0) {
+            rv.resolve(results);
+        }
+        return rv;
+    }
+
+    /**
+     * Waits for the first of the given values to be resolved. Plain values
+     * count as resolved.
+     *
+     * @param values {@link Deferred}s or plain values, or a single Javascript
+     * array of them
+     * @return a new {@link Deferred} resolved as the first one resolved, or
+     * rejected with the array of the reasons, in the given order, when all
+     * the {@link Deferred}s are rejected
+     */
+    public static Deferred any(Object... values) {
+        Object[] items = expand(values);
+        Deferred rv = new Deferred();
+        Object[] reasons = new Object[items.length];
+        AtomicInteger remaining = new AtomicInteger(items.length + 1);
+        for (int i = 0; i < items.length; i++) {
+            int index = i;
+            whenSettled(items[i], (resolved, result) -> {
+                if (resolved) {
+                    rv.resolve(result);
+                } else {
+                    reasons[index] = result;
+                    if (remaining.decrementAndGet() == 0) {
+                        rv.reject(reasons);
+                    }
+                }
+            });
+        }
+        if (remaining.decrementAndGet() == 0) {
+            rv.reject(reasons);
+        }
+        return rv;
+    }
+
+    /**
+     * Waits for the first of the given values to be settled. Plain values
+     * count as resolved. With no values the returned {@link Deferred} is never
+     * settled.
+     *
+     * @param values {@link Deferred}s or plain values, or a single Javascript
+     * array of them
+     * @return a new {@link Deferred} settled as the first one settled
+     */
+    public static Deferred race(Object... values) {
+        Deferred rv = new Deferred();
+        for (Object item : expand(values)) {
+            whenSettled(item, rv::settle);
+        }
+        return rv;
+    }
+
+    /**
+     * Adapts a {@link CompletionStage}. Nothing blocks waiting for it: the
+     * returned {@link Deferred} is settled by the thread completing the stage,
+     * or right away if it's already completed.
+     *
+     * @param stage stage to be adapted
+     * @return a new {@link Deferred} resolved with the stage's value or
+     * rejected with the exception it completes with, unwrapped from any
+     * {@link CompletionException}
+     */
+    public static Deferred from(CompletionStage<?> stage) {
+        Deferred rv = new Deferred();
+        stage.whenComplete((value, ex) -> {
+            if (ex == null) {
+                rv.resolve(value);
+            } else {
+                rv.reject(ex instanceof CompletionException
+                        && ex.getCause() != null ? ex.getCause() : ex);
+            }
+        });
+        return rv;
+    }
+
+    /**
+     * Adapts this {@link Deferred} to a {@link CompletableFuture}, completed
+     * when this {@link Deferred} is settled. Rejections with a value that
+     * isn't a {@link Throwable} complete the future with a
+     * {@link RejectedException} holding the value. Completing the future
+     * doesn't affect this {@link Deferred}.
+     *
+     * @return a new {@link CompletableFuture}
+     */
+    public CompletableFuture<Object> toCompletableFuture() {
+        CompletableFuture<Object> rv = new CompletableFuture<>();
+        addListener((resolved, result) -> {
             if (resolved) {
-                rv.resolve(resolvedResult);
-            } else if (rejected) {
-                rv.reject(rejectedResult);
+                rv.complete(result);
+            } else {
+                rv.completeExceptionally(result instanceof Throwable
+                        ? (Throwable) result : new RejectedException(result));
+            }
+        });
+        return rv;
+    }
+
+    /**
+     * Adapts the {@link CompletionStage}s among the values a {@link Deferred}
+     * can be settled with or wait for.
+     */
+    private static Object adapt(Object value) {
+        return value instanceof CompletionStage
+                ? from((CompletionStage<?>) value) : value;
+    }
+
+    private static void whenSettled(Object value, Listener listener) {
+        value = adapt(value);
+        if (value instanceof Deferred) {
+            ((Deferred) value).addListener(listener);
+        } else {
+            listener.settled(true, value);
+        }
+    }
+
+    /**
+     * Expands a single Javascript array argument into its items.
+     */
+    private static Object[] expand(Object[] values) {
+        if (values == null) {
+            return new Object[0];
+        }
+        if (values.length == 1 && values[0] instanceof JSObject
+                && ((JSObject) values[0]).isArray()) {
+            JSObject array = (JSObject) values[0];
+            Object[] rv = new Object[((Number) array.getMember("length")).
+                    intValue()];
+            for (int i = 0; i < rv.length; i++) {
+                rv[i] = array.getSlot(i);
             }
             return rv;
         }
-        throw new IllegalArgumentException("handler");
+        return values;
     }
 
     /**
-     * Runs right handlers when this {@link Deferred} object is either resolved
-     * or rejected.
+     * Registers a handler whose result settles the returned child
+     * {@link Deferred}. When the handler isn't run, or returns {@code null}
+     * or {@code undefined}, the child is settled as this {@link Deferred};
+     * when it returns a {@link Deferred} or a {@link CompletionStage}, the
+     * child is settled as that one;
+     * when it throws, the child is rejected with the exception.
+     */
+    private Deferred then(JSObject handler, boolean onResolve,
+            boolean onReject) {
+        if (handler == null || !handler.isFunction()) {
+            throw new IllegalArgumentException("handler");
+        }
+        Deferred child = new Deferred();
+        push(new HandlerCallback(this, handler, child, onResolve, onReject));
+        return child;
+    }
+
+    /**
+     * Pushes a callback on the stack, or queues it to be run if the
+     * {@link Deferred} is already settled.
+     */
+    private void push(Callback callback) {
+        Object current;
+        do {
+            current = state.get();
+            if (current instanceof Outcome) {
+                callback.next = null;
+                callback.outcome = (Outcome) current;
+                TRAMPOLINE.get().run(callback, callback);
+                return;
+            }
+            callback.next = (Callback) current;
+        } while (!state.compareAndSet(current, callback));
+    }
+
+    /**
+     * Moves the {@link Deferred} to its final state and runs the callbacks
+     * waiting for it. Only the first call has effect.
      *
-     * @param res result
+     * @param resolved {@code true} to resolve, {@code false} to reject
+     * @param result result of the deferred
+     */
+    private void settle(boolean resolved, Object result) {
+        Outcome outcome = new Outcome(resolved, result);
+        Object current;
+        do {
+            current = state.get();
+            if (current instanceof Outcome) {
+                return;
+            }
+        } while (!state.compareAndSet(current, outcome));
+
+        // the stack, now owned by this thread, holds the most recent callback
+        // first: it's reversed in place
+        Callback first = null;
+        Callback last = (Callback) current;
+        for (Callback c = last; c != null;) {
+            Callback next = c.next;
+            c.next = first;
+            c.outcome = outcome;
+            first = c;
+            c = next;
+        }
+        if (first != null) {
+            TRAMPOLINE.get().run(first, last);
+        }
+    }
+
+    /**
+     * Exception completing the {@link CompletableFuture} of a {@link Deferred}
+     * rejected with a value that isn't a {@link Throwable}.
      */
-    private void runHandlers(Object res) {
+    public static class RejectedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
 
-        Object result = null;
-        JSObject handler = null;
+        private final transient Object reason;
 
-        if (resolved) {
-            result = res != null ? res : resolvedResult;
-            handler = doneHandler;
-        } else if (rejected) {
-            result = res != null ? res : rejectedResult;
-            handler = failHandler;
+        /**
+         * Initialize a new instance of {@link RejectedException}.
+         *
+         * @param reason value the {@link Deferred} has been rejected with
+         */
+        public RejectedException(Object reason) {
+            super(String.valueOf(reason));
+            this.reason = reason;
         }
 
-        Function<Object, Consumer<Deferred>> consumerGenerator = (r) -> {
-            Consumer<Deferred> consumer = null;
+        /**
+         * Value the {@link Deferred} has been rejected with.
+         *
+         * @return value the {@link Deferred} has been rejected with
+         */
+        public Object getReason() {
+            return reason;
+        }
+    }
 
-            if (resolved) {
-                consumer = (p) -> {
-                    p.resolve(r);
-                };
-            } else if (rejected) {
-                consumer = (p) -> {
-                    p.reject(r);
-                };
-            }
-            return consumer;
-        };
+    /**
+     * Final state of a {@link Deferred}.
+     */
+    private final static class Outcome {
 
-        if (handler != null) {
+        final boolean resolved;
+        final Object result;
+
+        Outcome(boolean resolved, Object result) {
+            this.resolved = resolved;
+            this.result = result;
+        }
+    }
+
+    /**
+     * A callback waiting for the outcome of a {@link Deferred}. The same
+     * {@code next} link chains it in the stack of the {@link Deferred} and,
+     * once it's settled, in the queue of the {@link Trampoline}.
+     */
+    private abstract static class Callback {
+
+        Callback next;
+        Outcome outcome;
+
+        abstract void run(boolean resolved, Object result);
+    }
+
+    private final static class ListenerCallback extends Callback {
+
+        private final Listener listener;
+
+        ListenerCallback(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        void run(boolean resolved, Object result) {
+            listener.settled(resolved, result);
+        }
+    }
+
+    private final static class HandlerCallback extends Callback {
+
+        private final Deferred owner;
+        private final Deferred child;
+        private final boolean onResolve;
+        private final boolean onReject;
+        private JSObject handler;
+
+        HandlerCallback(Deferred owner, JSObject handler, Deferred child,
+                boolean onResolve, boolean onReject) {
+            this.owner = owner;
+            this.handler = handler;
+            this.child = child;
+            this.onResolve = onResolve;
+            this.onReject = onReject;
+        }
+
+        @Override
+        void run(boolean resolved, Object result) {
+            // a null handler means the callback is forwarding the outcome of
+            // the Deferred returned by the handler
+            if (handler == null || (resolved ? !onResolve : !onReject)) {
+                child.settle(resolved, result);
+                return;
+            }
             Object rv;
             try {
-                rv = handler.call(this, result);
-                if (res == null) {
-                    Object parm;
-
-                    if (rv != null && !(rv instanceof Undefined)) {
-                        parm = rv;
-                    } else {
-                        parm = result;
-                    }
+                rv = handler.call(owner, result);
+            } catch (Exception ex) {
+                child.reject(ex);
+                return;
+            }
+            rv = adapt(rv);
+            if (rv instanceof Deferred) {
+                // reused to wait for the returned Deferred, it's no longer
+                // linked anywhere
+                handler = null;
+                ((Deferred) rv).push(this);
+            } else if (rv != null && !(rv instanceof Undefined)) {
+                child.settle(resolved, rv);
+            } else {
+                child.settle(resolved, result);
+            }
+        }
+    }
 
-                    if (parm instanceof Deferred) {
-                        Deferred childPromise = (Deferred) parm;
-                        if (childPromise.children.isEmpty() && !children.
-                                isEmpty()) {
-                            childPromise.children.addAll(children);
-                        } else if (!childPromise.children.isEmpty()) {
-                            childPromise.children.get(childPromise.children.
-                                    size() - 1).children.addAll(children);
-                        }
-                        childPromise.runHandlers(null);
-                    } else {
-                        Consumer<Deferred> childrenConsumer = consumerGenerator.apply(parm);
-                        if (childrenConsumer != null) {
-                            children.stream().forEach(childrenConsumer);
+    /**
+     * Per-thread FIFO queue of the callbacks to be run. Only the outermost
+     * call drains it, nested calls just append.
+     */
+    private final static class Trampoline {
+
+        private Callback head;
+        private Callback tail;
+        private boolean running;
+
+        void run(Callback first, Callback last) {
+            if (tail == null) {
+                head = first;
+            } else {
+                tail.next = first;
+            }
+            tail = last;
+            if (running) {
+                return;
+            }
+            running = true;
+            Throwable error = null;
+            try {
+                Callback c;
+                while ((c = head) != null) {
+                    head = c.next;
+                    if (head == null) {
+                        tail = null;
+                    }
+                    c.next = null;
+                    Outcome outcome = c.outcome;
+                    c.outcome = null;
+                    try {
+                        c.run(outcome.resolved, outcome.result);
+                    } catch (RuntimeException | Error ex) {
+                        if (error == null) {
+                            error = ex;
                         }
                     }
                 }
-            } catch (Exception ex) {
-                resolved = false;
-                rejected = true;
-
-                runHandlers(ex);
+            } finally {
+                running = false;
             }
-        } else if (resolved || rejected) {
-            Consumer<Deferred> childrenConsumer = consumerGenerator.apply(result);
-            if (childrenConsumer != null) {
-                children.stream().forEach(childrenConsumer);
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if (error != null) {
+                throw (Error) error;
             }
         }
     }
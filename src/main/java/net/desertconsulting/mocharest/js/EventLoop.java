@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.js;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serial executor of the callbacks of an engine: tasks run one at a time, in
+ * the order they're posted, borrowing threads from a shared executor. A task
+ * throwing an exception is logged and doesn't stop the following ones. Tasks
+ * run holding the engine's script lock, so they don't overlap with the code
+ * of the requests sharing it.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+class EventLoop implements Executor {
+
+    /**
+     * Tasks run before giving the borrowed thread back to the other loops.
+     */
+    private final static int BATCH = 64;
+
+    private final Executor executor;
+    private final Lock lock;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable drain = this::drain;
+
+    /**
+     * Initialize a new instance of {@link EventLoop}.
+     *
+     * @param executor executor providing the threads running the tasks
+     * @param lock lock held while running the tasks
+     */
+    EventLoop(Executor executor, Lock lock) {
+        this.executor = executor;
+        this.lock = lock;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+            executor.execute(drain);
+        }
+    }
+
+    private void drain() {
+        lock.lock();
+        try {
+            Runnable task;
+            for (int i = 0; i < BATCH && (task = tasks.poll()) != null; i++) {
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    Logger.getLogger(EventLoop.class.getName()).log(
+                            Level.SEVERE, null, ex);
+                }
+            }
+        } finally {
+            lock.unlock();
+            scheduled.set(false);
+        }
+        schedule();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.js;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Counts the requests being handled by an engine, or a pool of engines, and
+ * lets a caller wait for them to complete before retiring it. Waiters are
+ * only notified while someone is waiting.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+class InFlight {
+
+    private final AtomicInteger count = new AtomicInteger();
+    private volatile int waiters;
+
+    /**
+     * A request has started.
+     */
+    void begin() {
+        count.incrementAndGet();
+    }
+
+    /**
+     * A request has completed.
+     */
+    void end() {
+        count.decrementAndGet();
+        signal();
+    }
+
+    /**
+     * Wakes up the waiters to check their condition again.
+     */
+    void signal() {
+        if (waiters > 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Number of requests being handled.
+     */
+    int get() {
+        return count.get();
+    }
+
+    /**
+     * Waits for no request to be in flight and for {@code idle} to hold.
+     * Whoever changes the outcome of {@code idle} must call {@link #signal()}.
+     *
+     * @param idle additional condition
+     * @param deadline value of {@link System#nanoTime()} to wait until
+     * @return {@code false} if the deadline has passed first
+     * @throws InterruptedException the thread has been interrupted
+     */
+    boolean await(BooleanSupplier idle, long deadline) throws
+            InterruptedException {
+        synchronized (this) {
+            waiters++;
+            try {
+                while (count.get() > 0 || !idle.getAsBoolean()) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, left);
+                }
+                return true;
+            } finally {
+                waiters--;
+            }
+        }
+    }
+}
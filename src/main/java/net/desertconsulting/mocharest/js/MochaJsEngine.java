@@ -15,28 +15,114 @@
  */
 package net.desertconsulting.mocharest.js;
 
+import java.io.IOException;
 import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import jdk.nashorn.api.scripting.JSObject;
+import jdk.nashorn.api.scripting.NashornScriptEngineFactory;
 import net.desertconsulting.mocharest.RestEngine;
 import net.desertconsulting.mocharest.RestEngineImpl;
+import net.desertconsulting.mocharest.request.RouteLimiter;
+import net.desertconsulting.mocharest.request.RouteMatch;
 
 /**
  * Wrapper class to inizialize and run a Javascript application server.
+ * <p>
+ * Scripts get the {@code setTimeout}, {@code setInterval},
+ * {@code clearTimeout} and {@code clearInterval} functions. Timer callbacks
+ * don't hold any thread while waiting and are run one at a time, in order,
+ * on the engine's event loop, holding the engine's script lock, on the
+ * threads of the web application's {@link TimerService}. Requests
+ * take the same lock when the engine belongs to a {@link MochaJsEnginePool},
+ * a standalone engine serves its requests concurrently.
  *
  * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
  */
 public class MochaJsEngine {
 
+    private final static Runnable NO_COMPLETION = () -> {
+    };
+    private final static String MODULE_HEADER
+            = "(function (module, exports, require) {";
+    private final static String MODULE_FOOTER = "\n})";
+    private final static String TIMERS_INSTALLER
+            = "(function (global, setTimeout, setInterval, clearTimeout) {\n"
+            + "    function schedule(timer) {\n"
+            + "        return function (callback, delay) {\n"
+            + "            if (typeof callback !== 'function') {\n"
+            + "                throw new TypeError('callback is not a function');\n"
+            + "            }\n"
+            + "            var args = Array.prototype.slice.call(arguments, 2);\n"
+            + "            return timer(args.length === 0 ? callback : function () {\n"
+            + "                callback.apply(global, args);\n"
+            + "            }, +delay || 0);\n"
+            + "        };\n"
+            + "    }\n"
+            + "    global.setTimeout = schedule(setTimeout);\n"
+            + "    global.setInterval = schedule(setInterval);\n"
+            + "    global.clearTimeout = global.clearInterval = function (id) {\n"
+            + "        clearTimeout(id);\n"
+            + "    };\n"
+            + "})";
+
     private final ScriptEngine scriptEngine;
     private final RestEngineImpl restEngine;
+    private final ModuleCache moduleCache;
+    private final Map<String, JSObject> modules = new HashMap<>();
+    private final JSObject objectConstructor;
+    private final Function<String, Object> require = this::requireModule;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Timers timers;
+    private final InFlight inFlight = new InFlight();
 
     public final static String MOCHA_RESTENGINE_GLOBALNAME = "$mr";
 
+    /**
+     * Name of the context parameter holding the space-separated options passed
+     * to Nashorn, e.g. {@code --persistent-code-cache --optimistic-types=true}.
+     */
+    public final static String ENGINE_OPTIONS_PARAM = "mocharest.engineOptions";
+
+    /**
+     * Name of the context parameter setting the directory where Nashorn
+     * stores compiled scripts across restarts. Setting it turns on the
+     * {@code --persistent-code-cache} option. Nashorn only reads the directory
+     * from the JVM-wide {@link #CODE_CACHE_DIR_PROPERTY} system property, see
+     * {@link #initCodeCache(javax.servlet.ServletContext)}.
+     */
+    public final static String CODE_CACHE_DIR_PARAM = "mocharest.codeCacheDir";
+
+    /**
+     * Name of the system property Nashorn reads the code cache directory from.
+     */
+    public final static String CODE_CACHE_DIR_PROPERTY = "nashorn.persistent.code.cache";
+
+    private final static String PERSISTENT_CODE_CACHE = "--persistent-code-cache";
+
+    private final static NashornScriptEngineFactory FACTORY
+            = new NashornScriptEngineFactory();
+
     /**
      * Initialize a new instance of {@link MochaJsEngine}, registers the
      * Javascript module loading interface and the {@link Deferred} interface.
@@ -45,35 +131,190 @@ public class MochaJsEngine {
      * @throws ScriptException a Javascript error has occured during the initialization
      */
     public MochaJsEngine(ServletContext context) throws ScriptException {
+        this(context, new ModuleCache());
+    }
+
+    /**
+     * Initialize a new instance of {@link MochaJsEngine}, registers the
+     * Javascript module loading interface and the {@link Deferred} interface.
+     * Nashorn options are read from the context parameters
+     * {@link #ENGINE_OPTIONS_PARAM} and {@link #CODE_CACHE_DIR_PARAM}.
+     *
+     * @param context servlet context
+     * @param moduleCache cache of the modules' sources, it can be shared by
+     * many engines
+     * @throws ScriptException a Javascript error has occured during the initialization
+     */
+    public MochaJsEngine(ServletContext context, ModuleCache moduleCache)
+            throws ScriptException {
+        this(context, moduleCache, getEngineOptions(context));
+    }
+
+    /**
+     * Initialize a new instance of {@link MochaJsEngine}, registers the
+     * Javascript module loading interface and the {@link Deferred} interface.
+     *
+     * @param context servlet context
+     * @param moduleCache cache of the modules' sources, it can be shared by
+     * many engines
+     * @param options Nashorn options, as accepted by the jjs command
+     * @throws ScriptException a Javascript error has occured during the initialization
+     */
+    public MochaJsEngine(ServletContext context, ModuleCache moduleCache,
+            String... options) throws ScriptException {
 
         restEngine = new RestEngineImpl(context);
+        this.moduleCache = moduleCache;
+        TimerService timerService = TimerService.get(context);
+        timers = new Timers(new EventLoop(timerService.getLoopExecutor(),
+                lock), timerService.getScheduler(), inFlight::signal);
 
-        scriptEngine = new ScriptEngineManager().getEngineByName("js");
+        scriptEngine = FACTORY.getScriptEngine(options);
 
         scriptEngine.put(MOCHA_RESTENGINE_GLOBALNAME, (RestEngine) restEngine);
+        restEngine.setJsonParser((JSObject) scriptEngine.eval("JSON.parse"));
 
         // nodejs-style module loading
-        scriptEngine.put("_module_cache", "{}");
-        scriptEngine.put("require", scriptEngine.eval("function require(path) {"
-                + "var module;"
-                + "if(_module_cache[path]) {"
-                + " module = _module_cache[path];"
-                + "} else {"
-                + " module = {exports:null};"
-                + " loadWithNewGlobal({"
-                + "  name: path"
-                + "  , script:'module=arguments[0];' + $mr.getFileContent(path)"
-                + " }, module); "
-                + " _module_cache[path] = module;"
-                + "}"
-                + "return module.exports; "
-                + "}"));
+        objectConstructor = (JSObject) scriptEngine.eval("Object");
+        scriptEngine.put("require", require);
+
+        // timers, their callbacks run on the engine's event loop
+        ((JSObject) scriptEngine.eval(TIMERS_INSTALLER)).call(null,
+                scriptEngine.eval("this"),
+                (BiFunction<JSObject, Number, Integer>) timers::setTimeout,
+                (BiFunction<JSObject, Number, Integer>) timers::setInterval,
+                (Consumer<Object>) timers::clearTimeout);
 
         //jQuery.Deferred-like interface
         scriptEngine.eval("var scope = new JavaImporter(Packages.net.desertconsulting.mocharest.js);\n"
                 + "Deferred = scope.Deferred;");
     }
 
+    /**
+     * Loads a module, nodejs-style: the module's code is run once per engine
+     * with {@code module}, {@code exports} and {@code require} in scope, later
+     * calls return the same {@code module.exports}. A module requiring,
+     * directly or not, itself gets its exports as they are at that moment.
+     *
+     * @param path path to a context's resource or a data-URI
+     * @return the module's exports
+     * @throws ScriptException a Javascript error has occured running the module
+     * @throws IOException IO error loading the module
+     * @throws URISyntaxException malformed path
+     */
+    public Object require(String path) throws ScriptException, IOException,
+            URISyntaxException {
+        String key = ModuleCache.normalize(path);
+        synchronized (modules) {
+            JSObject module = modules.get(key);
+            if (module == null) {
+                String source = moduleCache.getSource(key,
+                        restEngine::getFileContent);
+                CompiledScript script = compile(key, source);
+                JSObject exports = (JSObject) objectConstructor.newObject();
+                module = (JSObject) objectConstructor.newObject();
+                module.setMember("id", key);
+                module.setMember("exports", exports);
+                modules.put(key, module);
+                try {
+                    ((JSObject) script.eval()).call(exports, module, exports,
+                            require);
+                } catch (RuntimeException | ScriptException ex) {
+                    modules.remove(key);
+                    throw ex;
+                }
+            }
+            return module.getMember("exports");
+        }
+    }
+
+    /**
+     * Reads the Nashorn options from the context parameters. No system
+     * property is changed, see {@link #initCodeCache(ServletContext)}.
+     *
+     * @param context servlet context
+     * @return Nashorn options
+     */
+    public static String[] getEngineOptions(ServletContext context) {
+        if (context == null) {
+            return new String[0];
+        }
+        List<String> rv = new ArrayList<>();
+        String options = context.getInitParameter(ENGINE_OPTIONS_PARAM);
+        if (options != null && !options.trim().isEmpty()) {
+            rv.addAll(Arrays.asList(options.trim().split("\\s+")));
+        }
+        if (getCodeCacheDir(context) != null
+                && !rv.contains(PERSISTENT_CODE_CACHE)) {
+            rv.add(PERSISTENT_CODE_CACHE);
+        }
+        return rv.toArray(new String[rv.size()]);
+    }
+
+    /**
+     * Points Nashorn to the code cache directory set by the
+     * {@link #CODE_CACHE_DIR_PARAM} context parameter. It's called once by the
+     * servlet's {@code init}, before any engine is created. The directory is
+     * stored in the {@link #CODE_CACHE_DIR_PROPERTY} system property, which is
+     * shared by all the web applications of the JVM: a value already set, by
+     * the command line or another application, is left as it is.
+     *
+     * @param context servlet context
+     * @return {@code true} if the system property has been set
+     */
+    public static boolean initCodeCache(ServletContext context) {
+        String cacheDir = getCodeCacheDir(context);
+        if (cacheDir == null) {
+            return false;
+        }
+        synchronized (MochaJsEngine.class) {
+            String current = System.getProperty(CODE_CACHE_DIR_PROPERTY);
+            if (current == null) {
+                System.setProperty(CODE_CACHE_DIR_PROPERTY, cacheDir);
+                return true;
+            }
+            if (!current.equals(cacheDir)) {
+                Logger.getLogger(MochaJsEngine.class.getName()).log(
+                        Level.WARNING, "{0} is already set to {1}, {2} is "
+                        + "ignored", new Object[]{CODE_CACHE_DIR_PROPERTY,
+                            current, cacheDir});
+            }
+            return false;
+        }
+    }
+
+    private static String getCodeCacheDir(ServletContext context) {
+        String rv = context != null ? context.getInitParameter(
+                CODE_CACHE_DIR_PARAM) : null;
+        return rv != null && !rv.trim().isEmpty() ? rv.trim() : null;
+    }
+
+    private Object requireModule(String path) {
+        try {
+            return require(path);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } catch (ScriptException | URISyntaxException ex) {
+            throw new IllegalArgumentException(path, ex);
+        }
+    }
+
+    private CompiledScript compile(String path, String source) throws
+            ScriptException {
+        ScriptContext context = scriptEngine.getContext();
+        Object filename = context.getAttribute(ScriptEngine.FILENAME,
+                ScriptContext.ENGINE_SCOPE);
+        context.setAttribute(ScriptEngine.FILENAME, path,
+                ScriptContext.ENGINE_SCOPE);
+        try {
+            return ((Compilable) scriptEngine).compile(MODULE_HEADER + source
+                    + MODULE_FOOTER);
+        } finally {
+            context.setAttribute(ScriptEngine.FILENAME, filename,
+                    ScriptContext.ENGINE_SCOPE);
+        }
+    }
+
     /**
      * Evals a Javascript coming from the given {@code reader}.
      * @param reader source of the script
@@ -84,13 +325,109 @@ public class MochaJsEngine {
         return scriptEngine.eval(reader);
     }
 
+    /**
+     * Runs the warm-up functions registered by the script through
+     * {@code $mr.warmUp()}.
+     * @throws ScriptException a warm-up function has failed
+     */
+    public void warmUp() throws ScriptException {
+        restEngine.runWarmUp();
+    }
+
     /**
      * Handles a servlet request.
      * @param request request to be handled
      * @param response response object
      */
     public void handle(HttpServletRequest request, HttpServletResponse response) {
-        restEngine.handle(request, response);
+        handle(request, response, NO_COMPLETION);
+    }
+
+    /**
+     * Handles a servlet request, notifying when the response is complete,
+     * which may happen after this method has returned.
+     * @param request request to be handled
+     * @param response response object
+     * @param onComplete run once when the response is complete, or has
+     * failed
+     */
+    public void handle(HttpServletRequest request, HttpServletResponse response,
+            Runnable onComplete) {
+        handle(request, response, null, null, onComplete);
+    }
+
+    /**
+     * Handles a servlet request already routed, whose route's slot has
+     * already been taken, see
+     * {@link RestEngineImpl#handle(HttpServletRequest, HttpServletResponse, RouteMatch, RouteLimiter, Runnable)}.
+     * @param request request to be handled
+     * @param response response object
+     * @param routed match of the request, or {@code null}
+     * @param acquired limiter of the request's route, already acquired, or
+     * {@code null}
+     * @param onComplete run once when the response is complete, or has
+     * failed
+     */
+    public void handle(HttpServletRequest request, HttpServletResponse response,
+            RouteMatch routed, RouteLimiter acquired, Runnable onComplete) {
+        inFlight.begin();
+        restEngine.handle(request, response, routed, acquired, () -> {
+            try {
+                onComplete.run();
+            } finally {
+                inFlight.end();
+            }
+        });
+    }
+
+    /**
+     * Makes the requests take the engine's script lock, so that their code
+     * doesn't overlap with the timer callbacks.
+     */
+    void lockRequests() {
+        restEngine.setScriptLock(lock);
+    }
+
+    /**
+     * Cancels the timers of the engine. Callbacks already posted to the event
+     * loop are still run.
+     */
+    public void close() {
+        timers.cancelAll();
+    }
+
+    /**
+     * Waits for the requests being handled to complete and for the pending
+     * timeouts to run, e.g. before closing a replaced engine. Intervals are
+     * never waited for.
+     * @param timeout maximum time to wait, in milliseconds
+     * @return {@code true} if the engine is idle, {@code false} if the
+     * timeout has elapsed first
+     * @throws InterruptedException the thread has been interrupted
+     */
+    public boolean drain(long timeout) throws InterruptedException {
+        return drainUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+                timeout));
+    }
+
+    boolean drainUntil(long deadline) throws InterruptedException {
+        return inFlight.await(() -> timers.countTimeouts() == 0, deadline);
+    }
+
+    /**
+     * Number of requests being handled.
+     * @return number of requests being handled
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Number of timers not run nor cancelled yet.
+     * @return number of pending timers
+     */
+    public int getPendingTimers() {
+        return timers.size();
     }
 
     /**
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.js;
+
+import java.io.StringReader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.script.ScriptException;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.ServiceUnavailableException;
+import net.desertconsulting.mocharest.RestEngineImpl;
+import net.desertconsulting.mocharest.request.RouteLimiter;
+import net.desertconsulting.mocharest.request.RouteLimiters;
+import net.desertconsulting.mocharest.request.RouteMatch;
+
+/**
+ * A fixed-size pool of independent {@link MochaJsEngine}s, each one with its
+ * own Javascript global scope and its own handlers, initialized by evaluating
+ * the same script and sharing a {@link ModuleCache}. Every request is handled
+ * by an engine not serving any other request, waiting for one to become free
+ * if needed. The engines share the limiters of their routes. The timer
+ * callbacks of an engine don't overlap with the code run by the request it
+ * serves.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class MochaJsEnginePool {
+
+    /**
+     * Name of the context parameter setting the number of engines of the
+     * pool. When the parameter is missing or not positive a single engine is
+     * shared by all the requests.
+     */
+    public final static String POOL_SIZE_PARAM = "mocharest.enginePoolSize";
+
+    private final MochaJsEngine[] engines;
+    private final BlockingQueue<MochaJsEngine> idle;
+    private final InFlight inFlight = new InFlight();
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitTime = new LongAdder();
+    private final LongAccumulator maxWaitTime = new LongAccumulator(Math::max,
+            0);
+
+    /**
+     * Initialize a new instance of {@link MochaJsEnginePool}.
+     *
+     * @param context servlet context
+     * @param size number of engines
+     * @param script Javascript evaluated by every engine
+     * @throws ScriptException a Javascript error has occured during the
+     * initialization of an engine
+     */
+    public MochaJsEnginePool(ServletContext context, int size, String script)
+            throws ScriptException {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size");
+        }
+        engines = new MochaJsEngine[size];
+        idle = new ArrayBlockingQueue<>(size);
+        ModuleCache modules = new ModuleCache();
+        String[] options = MochaJsEngine.getEngineOptions(context);
+        // also shared without a context
+        RouteLimiters limiters = RouteLimiters.get(context);
+        for (int i = 0; i < size; i++) {
+            engines[i] = new MochaJsEngine(context, modules, options);
+            engines[i].lockRequests();
+            ((RestEngineImpl) engines[i].getRestEngine()).setRouteLimiters(
+                    limiters);
+            engines[i].eval(new StringReader(script));
+            idle.add(engines[i]);
+        }
+    }
+
+    /**
+     * Runs the warm-up functions of every engine, see
+     * {@link MochaJsEngine#warmUp()}.
+     * @throws ScriptException a warm-up function has failed
+     */
+    public void warmUp() throws ScriptException {
+        for (MochaJsEngine engine : engines) {
+            engine.warmUp();
+        }
+    }
+
+    /**
+     * Handles a servlet request on a free engine. The engine is held until
+     * the response is complete: when the handler returns a {@link Deferred},
+     * until it's settled or times out, so that its callbacks don't run while
+     * the engine serves another request.
+     *
+     * @param request request to be handled
+     * @param response response object
+     * @throws ServiceUnavailableException the route's limit has been
+     * reached, or the thread has been interrupted while waiting for a free
+     * engine
+     */
+    public void handle(HttpServletRequest request, HttpServletResponse response) {
+        // requests waiting for a slot of their route don't hold an engine,
+        // the borrowed engine reuses the match
+        RestEngineImpl router = (RestEngineImpl) engines[0].getRestEngine();
+        RouteMatch match = router.route(request);
+        RouteLimiter limiter = match != null ? router.getLimiter(match)
+                : null;
+        if (limiter != null && !limiter.acquire()) {
+            throw new ServiceUnavailableException(
+                    (long) limiter.getRetryAfter());
+        }
+        inFlight.begin();
+        MochaJsEngine engine;
+        try {
+            engine = acquire();
+        } catch (RuntimeException ex) {
+            inFlight.end();
+            if (limiter != null) {
+                limiter.release();
+            }
+            throw ex;
+        }
+        engine.handle(request, response, match, limiter, new Release(engine));
+    }
+
+    /**
+     * Gives an engine back to the pool.
+     */
+    private void release(MochaJsEngine engine) {
+        idle.add(engine);
+    }
+
+    private MochaJsEngine acquire() {
+        acquisitions.increment();
+        MochaJsEngine rv = idle.poll();
+        if (rv == null) {
+            long start = System.nanoTime();
+            try {
+                rv = idle.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new ServiceUnavailableException();
+            }
+            long elapsed = System.nanoTime() - start;
+            waits.increment();
+            waitTime.add(elapsed);
+            maxWaitTime.accumulate(elapsed);
+        }
+        return rv;
+    }
+
+    /**
+     * Cancels the timers of all the engines.
+     */
+    public void close() {
+        for (MochaJsEngine engine : engines) {
+            engine.close();
+        }
+    }
+
+    /**
+     * Waits for the requests being handled, or waiting for an engine, to
+     * complete and for the pending timeouts of all the engines to run, see
+     * {@link MochaJsEngine#drain(long)}.
+     * @param timeout maximum time to wait, in milliseconds
+     * @return {@code true} if the pool is idle, {@code false} if the timeout
+     * has elapsed first
+     * @throws InterruptedException the thread has been interrupted
+     */
+    public boolean drain(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+                timeout);
+        if (!inFlight.await(() -> true, deadline)) {
+            return false;
+        }
+        for (MochaJsEngine engine : engines) {
+            if (!engine.drainUntil(deadline)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the engines of the pool.
+     * @return a copy of the array of the engines of the pool
+     */
+    public MochaJsEngine[] getEngines() {
+        return engines.clone();
+    }
+
+    /**
+     * Number of engines of the pool.
+     * @return number of engines of the pool
+     */
+    public int getSize() {
+        return engines.length;
+    }
+
+    /**
+     * Number of engines not serving any request.
+     * @return number of engines not serving any request
+     */
+    public int getAvailable() {
+        return idle.size();
+    }
+
+    /**
+     * Number of requests served, or being served, by the pool.
+     * @return number of requests served by the pool
+     */
+    public long getAcquireCount() {
+        return acquisitions.sum();
+    }
+
+    /**
+     * Number of requests that had to wait for a free engine.
+     * @return number of requests that had to wait for a free engine
+     */
+    public long getWaitCount() {
+        return waits.sum();
+    }
+
+    /**
+     * Overall time spent by requests waiting for a free engine.
+     * @return overall waiting time, in nanoseconds
+     */
+    public long getTotalWaitNanos() {
+        return waitTime.sum();
+    }
+
+    /**
+     * Longest time spent by a request waiting for a free engine.
+     * @return longest waiting time, in nanoseconds
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitTime.get();
+    }
+
+    /**
+     * Gives an engine back to the pool, once.
+     */
+    private class Release implements Runnable {
+
+        private final MochaJsEngine engine;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Release(MochaJsEngine engine) {
+            this.engine = engine;
+        }
+
+        @Override
+        public void run() {
+            if (released.compareAndSet(false, true)) {
+                try {
+                    release(engine);
+                } finally {
+                    inFlight.end();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.js;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe cache of the sources of the modules loaded through
+ * {@code require()}, keyed by normalized resource path. Every module is read
+ * once and its source is shared by all the {@link MochaJsEngine}s using the
+ * cache, each engine compiling and running it in its own global scope.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class ModuleCache {
+
+    private final Map<String, String> sources = new ConcurrentHashMap<>();
+
+    /**
+     * Reads the content of a module.
+     */
+    @FunctionalInterface
+    public interface SourceLoader {
+
+        /**
+         * Reads the content of a module.
+         *
+         * @param path normalized path to a context's resource or a data-URI
+         * @return content of the module
+         * @throws IOException IO error loading the module
+         * @throws URISyntaxException malformed path
+         */
+        String load(String path) throws IOException, URISyntaxException;
+    }
+
+    /**
+     * Retrieves the source of a module, loading it if it hasn't been loaded
+     * yet.
+     *
+     * @param path normalized path to a context's resource or a data-URI
+     * @param loader loader used when the module isn't cached
+     * @return content of the module
+     * @throws IOException IO error loading the module
+     * @throws URISyntaxException malformed path
+     */
+    public String getSource(String path, SourceLoader loader) throws
+            IOException, URISyntaxException {
+        try {
+            return sources.computeIfAbsent(path, p -> {
+                try {
+                    return loader.load(p);
+                } catch (IOException | URISyntaxException ex) {
+                    throw new LoadException(ex);
+                }
+            });
+        } catch (LoadException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw (URISyntaxException) ex.getCause();
+        }
+    }
+
+    /**
+     * Removes all the cached sources.
+     */
+    public void clear() {
+        sources.clear();
+    }
+
+    /**
+     * Number of cached sources.
+     *
+     * @return number of cached sources
+     */
+    public int size() {
+        return sources.size();
+    }
+
+    /**
+     * Normalizes a module path to an absolute context's resource path,
+     * resolving "." and ".." segments. Data-URIs are returned as they are.
+     *
+     * @param path path to a context's resource or a data-URI
+     * @return normalized path
+     */
+    public static String normalize(String path) {
+        if (path.regionMatches(true, 0, "data:", 0, 5)) {
+            return path;
+        }
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || ".".equals(segment)) {
+                continue;
+            }
+            if ("..".equals(segment)) {
+                segments.pollLast();
+            } else {
+                segments.addLast(segment);
+            }
+        }
+        return "/" + String.join("/", segments);
+    }
+
+    private static class LoadException extends RuntimeException {
+
+        LoadException(Exception cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.js;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.ServletContext;
+
+/**
+ * Threads backing the timers of the engines of a web application. A single
+ * scheduler thread keeps the timers and only posts their callbacks to the
+ * engines' {@link EventLoop}s, which run on a separate pool: a slow callback
+ * doesn't delay the timers of the other engines. Each event loop uses at most
+ * one thread at a time. Idle threads are released after a while.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class TimerService {
+
+    private final static String ATTRIBUTE = TimerService.class.getName();
+    private final static long KEEP_ALIVE = 60;
+    private final static AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ThreadPoolExecutor loops;
+
+    /**
+     * Initialize a new instance of {@link TimerService}.
+     */
+    public TimerService() {
+        scheduler = new ScheduledThreadPoolExecutor(1, factory(
+                "mocharest-timer-"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduler.setKeepAliveTime(KEEP_ALIVE, TimeUnit.SECONDS);
+        scheduler.allowCoreThreadTimeOut(true);
+        loops = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE,
+                TimeUnit.SECONDS, new SynchronousQueue<>(), factory(
+                "mocharest-loop-"));
+    }
+
+    private static ThreadFactory factory(String prefix) {
+        return r -> {
+            Thread rv = new Thread(r, prefix + THREAD_COUNT.incrementAndGet());
+            rv.setDaemon(true);
+            return rv;
+        };
+    }
+
+    /**
+     * Returns the timer service shared by the engines of a web application,
+     * creating it the first time. The service is stored as a context
+     * attribute.
+     *
+     * @param context servlet context, if {@code null} a service shared by
+     * all the engines created without a context is returned
+     * @return the timer service of the web application
+     */
+    public static TimerService get(ServletContext context) {
+        if (context == null) {
+            return Shared.INSTANCE;
+        }
+        synchronized (TimerService.class) {
+            Object rv = context.getAttribute(ATTRIBUTE);
+            if (rv instanceof TimerService) {
+                return (TimerService) rv;
+            }
+            TimerService service = new TimerService();
+            context.setAttribute(ATTRIBUTE, service);
+            return service;
+        }
+    }
+
+    /**
+     * Shuts down the timer service shared by the engines of a web
+     * application, if any.
+     *
+     * @param context servlet context
+     */
+    public static void shutdown(ServletContext context) {
+        synchronized (TimerService.class) {
+            Object service = context.getAttribute(ATTRIBUTE);
+            if (service instanceof TimerService) {
+                context.removeAttribute(ATTRIBUTE);
+                ((TimerService) service).shutdown();
+            }
+        }
+    }
+
+    /**
+     * Drops the pending timers and stops accepting new ones, the callbacks
+     * already posted are run. The service shared by the engines created
+     * without a servlet context can't be shut down.
+     */
+    public void shutdown() {
+        if (this != Shared.INSTANCE) {
+            scheduler.shutdownNow();
+            loops.shutdown();
+        }
+    }
+
+    /**
+     * Whether the service has been shut down.
+     * @return {@code true} if the service has been shut down
+     */
+    public boolean isShutdown() {
+        return scheduler.isShutdown();
+    }
+
+    /**
+     * Scheduler keeping the timers, its tasks must only post work to an
+     * event loop.
+     */
+    ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Executor providing the threads of the event loops.
+     */
+    Executor getLoopExecutor() {
+        return loops;
+    }
+
+    /**
+     * Service of the engines created without a servlet context, e.g.
+     * embedded or in tests, created on first use. It's never shut down: its
+     * threads are daemons and are released once idle.
+     */
+    private static class Shared {
+
+        final static TimerService INSTANCE = new TimerService();
+    }
+}
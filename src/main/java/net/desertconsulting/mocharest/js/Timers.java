@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.js;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import jdk.nashorn.api.scripting.JSObject;
+
+/**
+ * Timers of an engine, backing the Javascript {@code setTimeout},
+ * {@code setInterval} and {@code clearTimeout} functions. Timers are kept by
+ * the scheduler of a {@link TimerService}, which only posts the callbacks to
+ * the engine's {@link EventLoop}: no thread is held while waiting.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+class Timers {
+
+    private final EventLoop loop;
+    private final ScheduledExecutorService scheduler;
+    private final Runnable onSettled;
+    private final Map<Integer, Timer> timers = new ConcurrentHashMap<>();
+    private final AtomicInteger ids = new AtomicInteger();
+
+    /**
+     * Initialize a new instance of {@link Timers}.
+     *
+     * @param loop event loop running the callbacks
+     * @param scheduler scheduler keeping the timers
+     * @param onSettled run after a timeout has run, or a timer has been
+     * cleared
+     */
+    Timers(EventLoop loop, ScheduledExecutorService scheduler,
+            Runnable onSettled) {
+        this.loop = loop;
+        this.scheduler = scheduler;
+        this.onSettled = onSettled;
+    }
+
+    /**
+     * Runs {@code callback} once, after {@code delay} milliseconds.
+     *
+     * @param callback Javascript function called with no arguments
+     * @param delay delay in milliseconds, negative values count as 0
+     * @return identifier of the timer
+     */
+    int setTimeout(JSObject callback, Number delay) {
+        int id = ids.updateAndGet(i -> i == Integer.MAX_VALUE ? 1 : i + 1);
+        Timer timer = new Timer(false);
+        timers.put(id, timer);
+        timer.start(id, scheduler.schedule(() -> loop.execute(() -> {
+            if (timers.remove(id) != null) {
+                try {
+                    callback.call(null);
+                } finally {
+                    onSettled.run();
+                }
+            }
+        }), toMillis(delay), TimeUnit.MILLISECONDS));
+        return id;
+    }
+
+    /**
+     * Runs {@code callback} every {@code delay} milliseconds, until cleared.
+     * A run isn't posted while the previous one is still waiting or running.
+     *
+     * @param callback Javascript function called with no arguments
+     * @param delay period in milliseconds, values lower than 1 count as 1
+     * @return identifier of the timer
+     */
+    int setInterval(JSObject callback, Number delay) {
+        int id = ids.updateAndGet(i -> i == Integer.MAX_VALUE ? 1 : i + 1);
+        long period = Math.max(1, toMillis(delay));
+        Timer timer = new Timer(true);
+        timers.put(id, timer);
+        timer.start(id, scheduler.scheduleAtFixedRate(() -> {
+            if (timer.pending.compareAndSet(false, true)) {
+                loop.execute(() -> {
+                    try {
+                        if (timers.containsKey(id)) {
+                            callback.call(null);
+                        }
+                    } finally {
+                        timer.pending.set(false);
+                    }
+                });
+            }
+        }, period, period, TimeUnit.MILLISECONDS));
+        return id;
+    }
+
+    /**
+     * Cancels a timer. Unknown identifiers are ignored.
+     *
+     * @param id identifier of the timer
+     */
+    void clearTimeout(Object id) {
+        if (id instanceof Number) {
+            Timer timer = timers.remove(((Number) id).intValue());
+            if (timer != null) {
+                timer.cancel();
+                onSettled.run();
+            }
+        }
+    }
+
+    /**
+     * Cancels all the timers.
+     */
+    void cancelAll() {
+        for (Integer id : timers.keySet()) {
+            clearTimeout(id);
+        }
+    }
+
+    /**
+     * Number of timers not run nor cancelled yet.
+     *
+     * @return number of pending timers
+     */
+    int size() {
+        return timers.size();
+    }
+
+    /**
+     * Number of timeouts not run nor cancelled yet, intervals excluded.
+     *
+     * @return number of pending timeouts
+     */
+    int countTimeouts() {
+        int rv = 0;
+        for (Timer timer : timers.values()) {
+            if (!timer.repeating) {
+                rv++;
+            }
+        }
+        return rv;
+    }
+
+    private static long toMillis(Number delay) {
+        double rv = delay != null ? delay.doubleValue() : 0;
+        return rv > 0 ? (long) rv : 0;
+    }
+
+    /**
+     * A scheduled timer. It may be cleared before its scheduling is recorded.
+     */
+    private class Timer {
+
+        final boolean repeating;
+        final AtomicBoolean pending = new AtomicBoolean();
+        private volatile ScheduledFuture<?> future;
+
+        Timer(boolean repeating) {
+            this.repeating = repeating;
+        }
+
+        void start(int id, ScheduledFuture<?> future) {
+            this.future = future;
+            if (!timers.containsKey(id)) {
+                future.cancel(false);
+            }
+        }
+
+        void cancel() {
+            ScheduledFuture<?> current = future;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+    }
+}
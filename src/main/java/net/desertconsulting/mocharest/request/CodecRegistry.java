@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Registry of the readers parsing request bodies, by media type. Readers are
+ * created once, from a configured mapper, and shared by all the requests:
+ * {@link ObjectReader}s are immutable and thread-safe, and keep the
+ * deserializers they look up cached across requests.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class CodecRegistry {
+
+    /**
+     * Registry used by {@link MochaRequest}, reading
+     * {@link MediaType#APPLICATION_JSON} and {@link MediaType#APPLICATION_XML}
+     * bodies into {@link HashMap}s.
+     */
+    public final static CodecRegistry DEFAULT = new CodecRegistry()
+            .register(MediaType.APPLICATION_JSON, new ObjectMapper())
+            .register(MediaType.APPLICATION_XML, new XmlMapper());
+
+    private final Map<String, ObjectReader> readers
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Registers the reader of a media type, reading bodies into
+     * {@link HashMap}s. The mapper mustn't be reconfigured afterwards.
+     *
+     * @param mediaType media type, e.g. {@code application/json}
+     * @param mapper configured mapper the reader is created from
+     * @return this registry, for chaining
+     */
+    public CodecRegistry register(String mediaType, ObjectMapper mapper) {
+        readers.put(mediaType, mapper.readerFor(HashMap.class));
+        return this;
+    }
+
+    /**
+     * Returns the reader of a media type.
+     *
+     * @param mediaType media type, e.g. {@code application/json}
+     * @return the reader or {@code null} if none is registered for the media
+     * type
+     */
+    public ObjectReader getReader(String mediaType) {
+        return readers.get(mediaType);
+    }
+}
@@ -15,24 +15,42 @@
  */
 package net.desertconsulting.mocharest.request;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collections;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.stream.Collectors;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ClientErrorException;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import jdk.nashorn.api.scripting.JSObject;
 import net.desertconsulting.mocharest.BadRequestMissingQueryParamException;
 
 /**
@@ -43,9 +61,45 @@ import net.desertconsulting.mocharest.BadRequestMissingQueryParamException;
  */
 public class MochaRequest extends HttpServletRequestWrapper {
 
+    /**
+     * Default size, in bytes, above which bodies are spilled to disk.
+     */
+    public final static long DEFAULT_SPILL_THRESHOLD = 1 << 20;
+
+    /**
+     * Default maximum size, in bytes, of a body read by
+     * {@link #getRawBody()} and the related methods.
+     */
+    public final static long DEFAULT_MAX_BODY_SIZE = Integer.MAX_VALUE;
+
     private MochaRequestHandler handler;
-    private final Map<String, Object> pathParameterMap;
+    private Map<String, Object> pathParameterMap;
+    private Map<String, Object> parametersMap;
+    private final static int BUFFER_SIZE = 8192;
+    private final static ByteBuffer EMPTY = ByteBuffer.allocate(0).
+            asReadOnlyBuffer();
+    private final static ObjectReader RECORD_READER = new ObjectMapper().
+            readerFor(Object.class);
+    /**
+     * Spilled bodies whose file couldn't be deleted, e.g. while still mapped
+     * on some systems. Deleting them is retried by the next releases, up to
+     * {@link #MAX_UNDELETED} files.
+     */
+    private final static Set<Path> UNDELETED = ConcurrentHashMap.newKeySet();
+    private final static int MAX_UNDELETED = 1024;
+
     private Object body;
+    private ByteBuffer rawBody;
+    private boolean rawBodyRead;
+    private long spillThreshold = DEFAULT_SPILL_THRESHOLD;
+    private Path spillDirectory;
+    private Path spillFile;
+    private long maxBodySize = DEFAULT_MAX_BODY_SIZE;
+    private boolean bodyTooLarge;
+    private List<Closeable> spillStreams;
+    private long recordCount;
+    private boolean bodyPending;
+    private JSObject jsonParser;
     private final String cType;
 
     /**
@@ -70,16 +124,47 @@ public class MochaRequest extends HttpServletRequestWrapper {
 
     /**
      * Initialize a new instance of {@link MochaRequest} retrieving the request's
-     * content-type and parsing parameters and body of the request.
+     * content-type and parsing parameters of the request. The body is parsed
+     * on demand.
      * @param request servlet request to be wrapped.
      * @param handler handler for the request
      */
     public MochaRequest(HttpServletRequest request, MochaRequestHandler handler) {
+        this(request, match(request, handler));
+    }
+
+    /**
+     * Initialize a new instance of {@link MochaRequest} retrieving the request's
+     * content-type and parsing parameters of the request. The body is parsed
+     * on demand.
+     * @param request servlet request to be wrapped.
+     * @param match result of routing the request's path, it carries the
+     * handler for the request and the position of the path parameters
+     */
+    public MochaRequest(HttpServletRequest request, RouteMatch match) {
+        this(request, match, null);
+    }
+
+    /**
+     * Initialize a new instance of {@link MochaRequest} retrieving the request's
+     * content-type and parsing parameters of the request. The body is parsed
+     * on demand.
+     * @param request servlet request to be wrapped.
+     * @param match result of routing the request's path, it carries the
+     * handler for the request and the position of the path parameters
+     * @param jsonParser Javascript function parsing a JSON string, used for
+     * JSON bodies when the handler asks for native bodies. It can be
+     * {@code null}
+     */
+    public MochaRequest(HttpServletRequest request, RouteMatch match,
+            JSObject jsonParser) {
         this(request);
-        this.handler = handler;
+        this.handler = match.getHandler();
         validateQueryString();
-        parsePathInfo();
-        parseBody();
+        pathParameterMap = match.getPathParameters();
+        // the body is parsed by the first call to getBody()
+        this.jsonParser = jsonParser;
+        bodyPending = true;
     }
 
     /**
@@ -101,32 +186,368 @@ public class MochaRequest extends HttpServletRequestWrapper {
     }
 
     /**
-     * Body of the request.
+     * Body of the request, parsed the first time it's requested; later calls
+     * return the same object. Handlers not calling this method can read the
+     * raw body through {@link #getRawBody()}, or by themselves through
+     * {@link #getInputStream()} or {@link #getReader()}, after which the body
+     * can't be parsed anymore. Bodies of handlers with the {@code stream}
+     * option aren't parsed, see {@link #forEachRecord(JSObject)}.
      * @return body of the request
      */
     public Object getBody() {
+        if (bodyPending) {
+            bodyPending = false;
+            if (handler.getStream() != null) {
+                // read one record at a time by forEachRecord
+            } else if (jsonParser != null && handler.isNativeBody()
+                    && MediaType.APPLICATION_JSON.equals(cType)) {
+                parseNativeBody(jsonParser);
+            } else {
+                parseBody();
+            }
+            jsonParser = null;
+        }
         return body;
     }
 
     /**
-     * The default behavior of this method is to return getParameterMap() on the
-     * wrapped request object.
+     * Raw body of the request, read once from the input stream. Every call
+     * returns a new buffer, with its own position and limit, sharing the same
+     * content. Once read, the body can't be read again through
+     * {@link #getInputStream()} or {@link #getReader()}, but
+     * {@link #getBody()} still parses it. Bodies larger than the spill
+     * threshold are written to a temporary file instead of being held on the
+     * heap, the first call maps the file. A mapping keeps the file's disk
+     * space until it's garbage collected, {@link #getBodyStream()} reads a
+     * spilled body without mapping it.
+     * @return a read-only buffer holding the body, or {@code null} if it
+     * can't be read
+     * @throws ClientErrorException the body is larger than the maximum body
+     * size, status 413
+     */
+    public ByteBuffer getRawBody() {
+        if (!readRawBody()) {
+            return null;
+        }
+        if (rawBody == null) {
+            try {
+                rawBody = map(spillFile);
+            } catch (IOException ex) {
+                Logger.getLogger(MochaRequest.class.getName()).log(Level.SEVERE,
+                        null, ex);
+                return null;
+            }
+        }
+        return rawBody.duplicate();
+    }
+
+    /**
+     * Raw body of the request as a Java byte array, see
+     * {@link #getRawBody()}.
+     * @return a copy of the body, or {@code null} if it can't be read
+     */
+    public byte[] getBodyAsBytes() {
+        if (!readRawBody()) {
+            return null;
+        }
+        if (rawBody == null) {
+            try {
+                return Files.readAllBytes(spillFile);
+            } catch (IOException ex) {
+                Logger.getLogger(MochaRequest.class.getName()).log(Level.SEVERE,
+                        null, ex);
+                return null;
+            }
+        }
+        ByteBuffer raw = rawBody.duplicate();
+        byte[] rv = new byte[raw.remaining()];
+        raw.get(rv);
+        return rv;
+    }
+
+    /**
+     * Raw body of the request decoded with the request's character encoding,
+     * UTF-8 if it's not set. See {@link #getRawBody()}.
+     * @return the body as text, or {@code null} if it can't be read
+     */
+    public String getBodyAsString() {
+        return getBodyAsString(null);
+    }
+
+    /**
+     * Raw body of the request decoded with the given character set. See
+     * {@link #getRawBody()}.
+     * @param charset name of the character set, when {@code null} the
+     * request's character encoding is used, UTF-8 if it's not set
+     * @return the body as text, or {@code null} if it can't be read
+     */
+    public String getBodyAsString(String charset) {
+        if (!readRawBody()) {
+            return null;
+        }
+        Charset cs = charset != null ? Charset.forName(charset) : getCharset();
+        if (rawBody != null) {
+            return cs.decode(rawBody.duplicate()).toString();
+        }
+        byte[] raw = getBodyAsBytes();
+        return raw != null ? new String(raw, cs) : null;
+    }
+
+    /**
+     * Reads the JSON body one record at a time, calling a function with every
+     * record and its index. Records are the elements of a JSON array or,
+     * for newline-delimited JSON, the top-level values, as set by the
+     * handler's {@code stream} option; without the option the kind is told
+     * by the first character of the body. Records are parsed into
+     * {@link java.util.Map}s, {@link java.util.List}s or plain values and
+     * only one of them is held at a time. Unless the raw body has already
+     * been read, records are read straight from the input stream, after which
+     * the body can't be read again. Top-level arrays aren't records of
+     * newline-delimited JSON, and nothing may follow a JSON array of records.
+     * @param callback function called with every record and its index
+     * @return number of records read
+     * @throws BadRequestException the body isn't a valid sequence of records,
+     * the message tells how many records have already been processed
+     */
+    public long forEachRecord(JSObject callback) {
+        long rv = 0;
+        recordCount = 0;
+        try (InputStream input = rawBodyRead ? getBodyStream()
+                : openRecordStream()) {
+            if (input == null) {
+                return rv;
+            }
+            try (JsonParser parser = RECORD_READER.getFactory().createParser(
+                    input)) {
+                JsonToken token = parser.nextToken();
+                boolean array = MochaRequestHandler.STREAM_ARRAY.equals(handler.
+                        getStream()) || handler.getStream() == null
+                        && token == JsonToken.START_ARRAY;
+                if (array) {
+                    if (token != JsonToken.START_ARRAY) {
+                        throw badRecords("a JSON array is expected", rv, null);
+                    }
+                    token = parser.nextToken();
+                }
+                while (token != null && token != JsonToken.END_ARRAY) {
+                    if (!array && token == JsonToken.START_ARRAY) {
+                        // an array would be read as a single record
+                        throw badRecords("unexpected JSON array in "
+                                + "newline-delimited JSON", rv, null);
+                    }
+                    Object record = RECORD_READER.readValue(parser);
+                    callback.call(null, record, rv++);
+                    recordCount = rv;
+                    token = parser.nextToken();
+                }
+                if (array && token == null) {
+                    throw badRecords("unterminated JSON array", rv, null);
+                }
+                if (!array && token == JsonToken.END_ARRAY) {
+                    throw badRecords("unexpected end of JSON array in "
+                            + "newline-delimited JSON", rv, null);
+                }
+                if (array && parser.nextToken() != null) {
+                    throw badRecords("unexpected content after the JSON array",
+                            rv, null);
+                }
+            }
+        } catch (JsonProcessingException ex) {
+            throw badRecords("malformed record " + rv, rv, ex);
+        } catch (IOException ex) {
+            Logger.getLogger(MochaRequest.class.getName()).log(Level.SEVERE,
+                    null, ex);
+            throw badRecords(ex.toString(), rv, ex);
+        }
+        return rv;
+    }
+
+    /**
+     * Error about the records of the body, telling how many of them have
+     * already been passed to the callback.
+     */
+    private static BadRequestException badRecords(String message,
+            long processed, Throwable cause) {
+        return new BadRequestException(message + " (" + processed
+                + " records processed)", cause);
+    }
+
+    /**
+     * Number of records read by the last call to
+     * {@link #forEachRecord(JSObject)}, e.g. by the handler's
+     * {@code onRecord} function before the handler's function is called.
+     * @return number of records read
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Opens the input stream for reading records, marking the raw body as
+     * read.
+     * @return the input stream or {@code null} if the body is empty
+     */
+    private InputStream openRecordStream() throws IOException {
+        rawBodyRead = true;
+        return getContentLength() != 0 ? getInputStream() : null;
+    }
+
+    /**
+     * Raw body of the request as a stream, see {@link #getRawBody()}. Every
+     * call returns a new stream starting from the beginning of the body.
+     * Spilled bodies are read from their temporary file, the stream is closed
+     * by {@link #releaseBody()} at the latest.
+     * @return a stream over the body, or {@code null} if it can't be read
+     * @throws ClientErrorException the body is larger than the maximum body
+     * size, status 413
+     */
+    public InputStream getBodyStream() {
+        if (!readRawBody()) {
+            return null;
+        }
+        if (rawBody != null) {
+            return new ByteBufferBackedInputStream(rawBody.duplicate());
+        }
+        try {
+            InputStream rv = Files.newInputStream(spillFile);
+            if (spillStreams == null) {
+                spillStreams = new ArrayList<>();
+            }
+            spillStreams.add(rv);
+            return rv;
+        } catch (IOException ex) {
+            Logger.getLogger(MochaRequest.class.getName()).log(Level.SEVERE,
+                    null, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Raw body of the request as a character stream decoded with the
+     * request's character encoding, UTF-8 if it's not set. See
+     * {@link #getBodyStream()}.
+     * @return a reader over the body, or {@code null} if it can't be read
+     */
+    public Reader getBodyReader() {
+        InputStream input = getBodyStream();
+        return input != null ? new InputStreamReader(input, getCharset())
+                : null;
+    }
+
+    /**
+     * Size above which the body is spilled to a temporary file. It must be
+     * set before the body is read.
+     * @param spillThreshold size in bytes, a negative value keeps every body
+     * on the heap
+     */
+    public void setSpillThreshold(long spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    /**
+     * Returns the size above which the body is spilled to a temporary file.
+     * @return size in bytes, negative if bodies are never spilled
+     */
+    public long getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * Maximum size of a body read by {@link #getRawBody()} and the related
+     * methods, larger bodies are refused with status 413. It must be set
+     * before the body is read. Records read straight from the input stream by
+     * {@link #forEachRecord(JSObject)} aren't limited.
+     * @param maxBodySize size in bytes, a negative value for no limit
+     */
+    public void setMaxBodySize(long maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * Returns the maximum size of a body read by {@link #getRawBody()}.
+     * @return size in bytes, negative if there's no limit
+     */
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * Directory where bodies larger than the spill threshold are written.
+     * @param spillDirectory a directory, {@code null} for the default
+     * temporary-file directory
+     */
+    public void setSpillDirectory(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Returns the temporary file holding the body, if it has been spilled.
+     * @return path of the temporary file or {@code null}
+     */
+    public Path getSpillFile() {
+        return spillFile;
+    }
+
+    /**
+     * Closes the streams over a spilled body and deletes its temporary file.
+     * It's called when the response is complete, the streams and buffers
+     * returned for the body mustn't be used afterwards. Files that can't be
+     * deleted yet, e.g. while still mapped on some systems, are deleted by a
+     * later release.
+     */
+    public void releaseBody() {
+        Path file = spillFile;
+        if (file != null) {
+            spillFile = null;
+            if (spillStreams != null) {
+                for (Closeable stream : spillStreams) {
+                    try {
+                        stream.close();
+                    } catch (IOException ex) {
+                        Logger.getLogger(MochaRequest.class.getName()).log(
+                                Level.WARNING, null, ex);
+                    }
+                }
+                spillStreams = null;
+            }
+            // unmapped once collected
+            rawBody = null;
+            if (!delete(file)) {
+                if (UNDELETED.size() < MAX_UNDELETED) {
+                    UNDELETED.add(file);
+                } else {
+                    Logger.getLogger(MochaRequest.class.getName()).log(
+                            Level.WARNING, "{0} can''t be deleted", file);
+                }
+            }
+        }
+        if (!UNDELETED.isEmpty()) {
+            UNDELETED.removeIf(MochaRequest::delete);
+        }
+    }
+
+    private static boolean delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+            return true;
+        } catch (IOException ex) {
+            Logger.getLogger(MochaRequest.class.getName()).log(Level.FINE,
+                    null, ex);
+            return false;
+        }
+    }
+
+    /**
+     * A read-only view of getParameterMap() on the wrapped request object,
+     * created once per request. Values are unwrapped when they're read.
      * @return an immutable java.util.Map containing parameter names as keys and 
      * parameter values as map values. The keys in the parameter map are of type String.
      * The values in the parameter map are of type String or String array.
      */
     public Map<String, Object> getParametersMap() {
-        Map<String, String[]> parameterMap = super.getParameterMap();
-        Map<String, Object> parametersMap = new HashMap<>(parameterMap.size());
-        parameterMap.forEach((String key, String[] value) -> {
-            Object val = null;
-            if (value == null || value.length != 1) {
-                val = value;
-            } else if (value.length == 1) {
-                val = value[0];
-            }
-            parametersMap.put(key, val);
-        });
+        if (parametersMap == null) {
+            parametersMap = new ParametersMapView(this);
+        }
         return parametersMap;
     }
 
@@ -138,59 +559,208 @@ public class MochaRequest extends HttpServletRequestWrapper {
      */
     private void validateQueryString() {
 
-        List<String> parameterNames = Collections.list(getParameterNames());
-        Optional<String> res = handler.queryParameters.stream().parallel().filter((p) -> !parameterNames.contains(p)).findAny();
-        if (res.isPresent()) {
-            throw new BadRequestMissingQueryParamException(res.get());
+        String[] required = handler.queryParameters;
+        if (required.length > 0) {
+            Map<String, String[]> parameters = getParameterMap();
+            for (String name : required) {
+                if (!parameters.containsKey(name)) {
+                    throw new BadRequestMissingQueryParamException(name);
+                }
+            }
         }
     }
 
     /**
-     * Parse all the path parameters in the request.
-     * @throws BadRequestException if a required path parameters is not found
+     * Matches the request's path against the given handler.
+     * @param request servlet request
+     * @param handler handler for the request
+     * @return result of matching the request's path
+     * @throws BadRequestException if the path doesn't match the handler
      */
-    private void parsePathInfo() {
-
-        String pathInfo = getPathInfo();
-        Matcher matcher = handler.getPathPattern().matcher(pathInfo);
-        final AtomicInteger index = new AtomicInteger(1);
-        if (matcher.find()) {
-            pathParameterMap.putAll(handler.pathParameters.entrySet().stream().collect(Collectors.toMap((pp) -> pp.getKey(),
-                     (pp) -> {
-                        try {
-                            return pp.getValue().convert.apply(matcher.group(index.getAndIncrement()));
-                        } catch (Exception ex) {
-                            Logger.getLogger(getClass().getName()).log(Level.SEVERE,
-                                    null, ex);
-                            throw new BadRequestParamException(pp.getKey(), ex);
-                        }
-                    })));
-        } else {
+    private static RouteMatch match(HttpServletRequest request,
+            MochaRequestHandler handler) {
+        RouteMatch match = handler.match(request.getPathInfo());
+        if (match == null) {
             throw new BadRequestException("path parameters don't match");
         }
+        return match;
+    }
+
+    /**
+     * Reads the body once, into an array sized from the content length when
+     * it's known, or into a temporary file when it's larger than the spill
+     * threshold.
+     * @return {@code true} if the body is available, on the heap or spilled
+     * @throws ClientErrorException the body is larger than the maximum body
+     * size, status 413
+     */
+    private boolean readRawBody() {
+        if (bodyTooLarge) {
+            throw bodyTooLarge();
+        }
+        if (!rawBodyRead) {
+            rawBodyRead = true;
+            int length = getContentLength();
+            if (length == 0) {
+                rawBody = EMPTY;
+                return true;
+            }
+            if (maxBodySize >= 0 && length > maxBodySize) {
+                bodyTooLarge = true;
+                throw bodyTooLarge();
+            }
+            try (InputStream input = getInputStream()) {
+                if (spillThreshold >= 0 && length > spillThreshold) {
+                    spill(null, input);
+                } else if (length < 0) {
+                    // reads up to the threshold, or the maximum size, before
+                    // deciding where the body goes
+                    byte[] head = read(input, -1, spillThreshold < 0
+                            ? maxBodySize : maxBodySize < 0 ? spillThreshold
+                                    : Math.min(spillThreshold, maxBodySize));
+                    if (maxBodySize >= 0 && head.length > maxBodySize) {
+                        bodyTooLarge = true;
+                        throw bodyTooLarge();
+                    }
+                    if (spillThreshold >= 0 && head.length > spillThreshold) {
+                        spill(head, input);
+                    } else {
+                        rawBody = ByteBuffer.wrap(head).asReadOnlyBuffer();
+                    }
+                } else {
+                    rawBody = ByteBuffer.wrap(read(input, length, -1)).
+                            asReadOnlyBuffer();
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(MochaRequest.class.getName()).log(Level.SEVERE,
+                        null, ex);
+                releaseBody();
+            }
+        }
+        return rawBody != null || spillFile != null;
+    }
+
+    private ClientErrorException bodyTooLarge() {
+        return new ClientErrorException("request body larger than "
+                + maxBodySize + " bytes",
+                Response.Status.REQUEST_ENTITY_TOO_LARGE);
+    }
+
+    /**
+     * Writes the body to a temporary file, up to the maximum body size.
+     * @param head bytes already read from the input stream, or {@code null}
+     * @param input rest of the body
+     */
+    private void spill(byte[] head, InputStream input) throws IOException {
+        spillFile = spillDirectory != null ? Files.createTempFile(
+                spillDirectory, "mocharest-", ".body") : Files.createTempFile(
+                        "mocharest-", ".body");
+        try (OutputStream output = Files.newOutputStream(spillFile)) {
+            long size = 0;
+            if (head != null) {
+                output.write(head);
+                size = head.length;
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                size += read;
+                if (maxBodySize >= 0 && size > maxBodySize) {
+                    bodyTooLarge = true;
+                    break;
+                }
+                output.write(buffer, 0, read);
+            }
+        }
+        if (bodyTooLarge) {
+            releaseBody();
+            throw bodyTooLarge();
+        }
+    }
+
+    /**
+     * Maps a spilled body.
+     * @param file temporary file holding the body
+     * @return a read-only buffer mapping the file
+     */
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("body too large to be mapped");
+            }
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.
+                    size());
+        }
+    }
+
+    /**
+     * Reads the body into an array.
+     * @param length content length, negative if it's unknown
+     * @param limit when the length is unknown, stops reading once more than
+     * {@code limit} bytes have been read. Negative for no limit
+     */
+    private static byte[] read(InputStream input, int length, long limit)
+            throws IOException {
+        if (length < 0) {
+            ByteArrayOutputStream rv = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((limit < 0 || rv.size() <= limit)
+                    && (read = input.read(buffer)) >= 0) {
+                rv.write(buffer, 0, read);
+            }
+            return rv.toByteArray();
+        }
+        byte[] rv = new byte[length];
+        int offset = 0;
+        int read;
+        while (offset < length && (read = input.read(rv, offset, length
+                - offset)) >= 0) {
+            offset += read;
+        }
+        return offset < length ? Arrays.copyOf(rv, offset) : rv;
+    }
+
+    private Charset getCharset() {
+        String encoding = getCharacterEncoding();
+        return encoding != null ? Charset.forName(encoding)
+                : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Parse a request's JSON body into a native Javascript object.
+     * @param jsonParser Javascript function parsing a JSON string
+     */
+    private void parseNativeBody(JSObject jsonParser) {
+        String text = getBodyAsString();
+        if (text != null && !text.isEmpty()) {
+            try {
+                this.body = jsonParser.call(null, text);
+            } catch (RuntimeException ex) {
+                Logger.getLogger(MochaRequest.class.getName()).log(Level.SEVERE,
+                        null, ex);
+            }
+        }
     }
 
     /**
-     * Parse a request's body. Only supported formats are application/xml
+     * Parse a request's body with the reader registered in
+     * {@link CodecRegistry#DEFAULT}. Only supported formats are application/xml
      * and application/json. Any other format will be treated as JSON and may 
      * result in errors.
      */
     private void parseBody() {
-        if (getContentLength() > 0) {
-            try (InputStream input
-                    = getInputStream()) {
-                ObjectMapper mapper;
-                switch (cType) {
-                    case MediaType.APPLICATION_XML:
-                        mapper = new XmlMapper();
-                        break;
-                    case MediaType.APPLICATION_JSON:
-                    default:
-                        mapper = new ObjectMapper();
-                        break;
+        if (readRawBody() && (rawBody == null || rawBody.hasRemaining())) {
+            try (InputStream input = getBodyStream()) {
+                ObjectReader reader = CodecRegistry.DEFAULT.getReader(cType);
+                if (reader == null) {
+                    reader = CodecRegistry.DEFAULT.getReader(
+                            MediaType.APPLICATION_JSON);
                 }
 
-                this.body = (Object) mapper.readValue(input, HashMap.class);
+                this.body = (Object) reader.readValue(input);
 
             } catch (IOException ex) {
                 Logger.getLogger(MochaRequest.class.getName()).log(Level.SEVERE,
@@ -15,19 +15,18 @@
  */
 package net.desertconsulting.mocharest.request;
 
-import java.math.BigInteger;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import jdk.nashorn.api.scripting.JSObject;
+import jdk.nashorn.api.scripting.ScriptObjectMirror;
 
 /**
  * This class is a container for servlet-requests handlers and validators.
@@ -36,8 +35,9 @@ import jdk.nashorn.api.scripting.JSObject;
  */
 public class MochaRequestHandler {
 
-    List<String> queryParameters;
+    String[] queryParameters;
     Map<String, PathParam> pathParameters;
+    PathParam[] pathParameterList;
     
     /**
      * This is a javascript function handling incoming servlet requests
@@ -46,38 +46,57 @@ public class MochaRequestHandler {
 
     private final String contentType;
     private final String acceptType;
+    private final boolean nativeBody;
+    private RouteLimiter limiter;
+    private int position;
+    private final String stream;
+    private final JSObject onRecord;
+
+    /**
+     * Value of the {@code stream} handler option reading the body as
+     * newline-delimited JSON records.
+     */
+    public final static String STREAM_NDJSON = "ndjson";
+
+    /**
+     * Value of the {@code stream} handler option reading the body as a JSON
+     * array of records.
+     */
+    public final static String STREAM_ARRAY = "array";
+
+    private final static String[] NO_QUERY_PARAMETERS = new String[0];
 
     private final static Pattern PP_PATTERN = Pattern.compile(
             "(/\\{([a-zA-Z_]+):([^}]*)\\})");
 
-    private final static Map<String, Function<String, Object>> CONVERTERS
+    private final static Map<String, PathParamConverter> CONVERTERS
             = new HashMap<>();
 
     /**
      * Initialize path parameter value converters
      */
     static {
-        CONVERTERS.put("string", s -> s);
-        CONVERTERS.put("int", s -> Integer.parseInt(s));
-        CONVERTERS.put("long", s -> Long.parseLong(s));
-        CONVERTERS.put("float", s -> Float.parseFloat(s));
-        CONVERTERS.put("double", s -> Double.parseDouble(s));
-        CONVERTERS.put("hex", s -> new BigInteger(s.toUpperCase(), 16).
-                toByteArray());
+        CONVERTERS.put("string", PathParamConverters::toString);
+        CONVERTERS.put("int", PathParamConverters::toInt);
+        CONVERTERS.put("long", PathParamConverters::toLong);
+        CONVERTERS.put("float", PathParamConverters::toFloat);
+        CONVERTERS.put("double", PathParamConverters::toDouble);
+        CONVERTERS.put("hex", PathParamConverters::toBytes);
     }
 
-    private final static Map<String, Pattern> PATTERNS = new HashMap<>();
+    final static Map<String, Pattern> PATTERNS = new HashMap<>();
 
     static {
         PATTERNS.put("string", Pattern.compile("[^/]*"));
         PATTERNS.put("int", Pattern.compile("[0-9]+", 0));
         PATTERNS.put("long", Pattern.compile("[0-9]+", 0));
-        PATTERNS.put("float", Pattern.compile("[0-9]*(\\.[0-9]+)"));
-        PATTERNS.put("double", Pattern.compile("[0-9]*(\\.[0-9]+)"));
-        PATTERNS.put("hex", Pattern.compile("[\\da-f]{2,}",
-                Pattern.CASE_INSENSITIVE));
+        PATTERNS.put("float", Pattern.compile("[0-9]*(?:\\.[0-9]+)"));
+        PATTERNS.put("double", Pattern.compile("[0-9]*(?:\\.[0-9]+)"));
+        PATTERNS.put("hex", Pattern.compile("[\\da-fA-F]{2,}"));
     }
     private Pattern pathPattern;
+    private String path;
+    private boolean literal;
 
     public MochaRequestHandler(String url, JSObject... parms) throws
             MalformedURLException {
@@ -85,6 +104,10 @@ public class MochaRequestHandler {
             function = parms[0];
             contentType = null;
             acceptType = null;
+            nativeBody = false;
+            limiter = null;
+            stream = null;
+            onRecord = null;
         } else if (parms.length == 1 && parms[0] != null && !parms[0].
                 isFunction()) {
             contentType = (String) parms[0].getMember("contentType");
@@ -93,6 +116,10 @@ public class MochaRequestHandler {
             } else {
                 acceptType = null;
             }
+            nativeBody = isNativeBody(parms[0]);
+            limiter = createLimiter(parms[0]);
+            stream = getStream(parms[0]);
+            onRecord = getOnRecord(parms[0]);
         } else if (parms.length > 1) {
             if (parms[1].isFunction()) {
                 contentType = (String) parms[0].getMember("contentType");
@@ -101,6 +128,10 @@ public class MochaRequestHandler {
                 } else {
                     acceptType = null;
                 }
+                nativeBody = isNativeBody(parms[0]);
+                limiter = createLimiter(parms[0]);
+                stream = getStream(parms[0]);
+                onRecord = getOnRecord(parms[0]);
                 function = parms[1];
             } else {
                 throw new IllegalArgumentException(
@@ -109,15 +140,143 @@ public class MochaRequestHandler {
         } else {
             contentType = null;
             acceptType = null;
+            nativeBody = false;
+            limiter = null;
+            stream = null;
+            onRecord = null;
             function = null;
         }
 
-        pathParameters = new HashMap<>();
+        pathParameters = new LinkedHashMap<>();
         URL u = new URL("file", "", url);
         parseUrl(u);
         parseQueryString(u);
     }
 
+    private static boolean isNativeBody(JSObject options) {
+        return options.hasMember("nativeBody") && Boolean.TRUE.equals(options.
+                getMember("nativeBody"));
+    }
+
+    private static String getStream(JSObject options) {
+        Object value = options.hasMember("stream") ? options.getMember("stream")
+                : null;
+        if (value == null || ScriptObjectMirror.isUndefined(value)) {
+            return null;
+        }
+        if (!STREAM_NDJSON.equals(value) && !STREAM_ARRAY.equals(value)) {
+            throw new IllegalArgumentException("stream: " + value);
+        }
+        return value.toString();
+    }
+
+    private static JSObject getOnRecord(JSObject options) {
+        Object value = options.hasMember("onRecord") ? options.getMember(
+                "onRecord") : null;
+        if (value == null || ScriptObjectMirror.isUndefined(value)) {
+            return null;
+        }
+        if (!(value instanceof JSObject) || !((JSObject) value).isFunction()) {
+            throw new IllegalArgumentException(
+                    "onRecord is expected to be a function");
+        }
+        return (JSObject) value;
+    }
+
+    /**
+     * Creates the limiter of the handler from the options {@code maxConcurrent},
+     * {@code maxQueue}, {@code queueTimeout} and {@code retryAfter}.
+     * @return the limiter or {@code null} if {@code maxConcurrent} isn't set
+     */
+    private static RouteLimiter createLimiter(JSObject options) {
+        if (!options.hasMember("maxConcurrent")) {
+            return null;
+        }
+        return new RouteLimiter(getInt(options, "maxConcurrent", 0),
+                getInt(options, "maxQueue", 0),
+                getInt(options, "queueTimeout",
+                        (int) RouteLimiter.DEFAULT_QUEUE_TIMEOUT),
+                getInt(options, "retryAfter", RouteLimiter.DEFAULT_RETRY_AFTER));
+    }
+
+    private static int getInt(JSObject options, String name, int defaultValue) {
+        Object value = options.hasMember(name) ? options.getMember(name)
+                : null;
+        return value instanceof Number ? ((Number) value).intValue()
+                : defaultValue;
+    }
+
+    /**
+     * Limiter of the requests served at the same time, set through the
+     * {@code maxConcurrent}, {@code maxQueue}, {@code queueTimeout} and
+     * {@code retryAfter} handler options.
+     * @return the limiter or {@code null} if the handler has no limit
+     */
+    public RouteLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Replaces the limiter of the handler with the one shared by the engines,
+     * see {@link RouteLimiters#register(String, String, RouteLimiter)}.
+     * @param limiter the shared limiter
+     */
+    public void setLimiter(RouteLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    /**
+     * Position of the handler among the handlers registered for its method.
+     * The engines running the same script register the peers of a handler at
+     * the same position.
+     * @return position of the handler
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Sets the position of the handler among the handlers registered for its
+     * method.
+     * @param position position of the handler
+     */
+    public void setPosition(int position) {
+        this.position = position;
+    }
+
+    /**
+     * Whether JSON request bodies are parsed into native Javascript objects,
+     * set through the {@code nativeBody} handler option. Otherwise they're
+     * parsed into {@link java.util.Map}s.
+     * @return {@code true} if JSON request bodies are parsed into native
+     * Javascript objects
+     */
+    public boolean isNativeBody() {
+        return nativeBody;
+    }
+
+    /**
+     * How the body is read as a sequence of records, set through the
+     * {@code stream} handler option: {@link #STREAM_NDJSON} or
+     * {@link #STREAM_ARRAY}. Bodies of such handlers aren't parsed by
+     * {@link MochaRequest#getBody()}, they're read one record at a time by
+     * {@link MochaRequest#forEachRecord(jdk.nashorn.api.scripting.JSObject)}.
+     * @return the kind of stream or {@code null} if the body is parsed as a
+     * whole
+     */
+    public String getStream() {
+        return stream;
+    }
+
+    /**
+     * Function called with every record of the body, and its index, before
+     * the handler's function, set through the {@code onRecord} handler option.
+     * @return the function or {@code null}
+     */
+    public JSObject getOnRecord() {
+        return onRecord;
+    }
+
     /**
      * This {@link Pattern} check if a requested url matches is handled by this handler
      * @return 
@@ -126,6 +285,46 @@ public class MochaRequestHandler {
         return pathPattern;
     }
 
+    /**
+     * Matches a path against {@link MochaRequestHandler#getPathPattern()}.
+     * @param path path to be matched
+     * @return the match, or {@code null} if {@code path} isn't handled by this
+     * handler
+     */
+    public RouteMatch match(String path) {
+        Matcher matcher = pathPattern.matcher(path);
+        if (!matcher.matches()) {
+            return null;
+        }
+        if (pathParameterList.length == 0) {
+            return new RouteMatch(this, path, RouteMatch.NO_SPANS);
+        }
+        int[] spans = new int[pathParameterList.length << 1];
+        for (int i = 0; i < pathParameterList.length; i++) {
+            spans[i << 1] = matcher.start(i + 1);
+            spans[(i << 1) + 1] = matcher.end(i + 1);
+        }
+        return new RouteMatch(this, path, spans);
+    }
+
+    /**
+     * URL path this handler has been registered for, without query_string.
+     * @return URL path this handler has been registered for
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Whether this handler's path is made of literal characters only, with
+     * neither path parameters nor regular expression characters.
+     * @return {@code true} if a request's path must be equal to
+     * {@link MochaRequestHandler#getPath()} to match this handler
+     */
+    public boolean isLiteral() {
+        return literal;
+    }
+
     /**
      * Parse url's path, fill {@link MochaRequestHanlder#pathParameters} and sets
      * {@link MochaRequestHanlder#pathPattern}
@@ -133,8 +332,10 @@ public class MochaRequestHandler {
      */
     private void parseUrl(URL url) {
 
+        path = url.getPath();
+        List<PathParam> params = new ArrayList<>();
         StringBuffer sb = new StringBuffer();
-        Matcher matcher = PP_PATTERN.matcher(url.getPath());
+        Matcher matcher = PP_PATTERN.matcher(path);
         boolean found = false;
         while (matcher.find()) {
             found = true;
@@ -145,8 +346,9 @@ public class MochaRequestHandler {
                 p.name = name;
                 p.convert = CONVERTERS.get(type);
                 pathParameters.put(name, p);
-                matcher.appendReplacement(sb, String.format("/(%s)", PATTERNS.
-                        get(type).pattern()));
+                params.add(p);
+                matcher.appendReplacement(sb, Matcher.quoteReplacement(
+                        String.format("/(%s)", PATTERNS.get(type).pattern())));
             } else {
                 throw new IllegalArgumentException(String.format(
                         "'%s' is of an unknown type '%s'", name, type));
@@ -157,8 +359,10 @@ public class MochaRequestHandler {
             matcher.appendTail(sb);
             pathPattern = Pattern.compile(sb.toString());
         } else {
-            pathPattern = Pattern.compile(url.getPath());
+            pathPattern = Pattern.compile(path);
+            literal = !MochaRouter.isRegex(path);
         }
+        pathParameterList = params.toArray(new PathParam[params.size()]);
     }
 
     /**
@@ -177,9 +381,10 @@ public class MochaRequestHandler {
                         final String key = idx > 0 ? it.substring(0, idx) : it;
                         return key;
                     })
-                    .collect(Collectors.toList());
+                    .distinct()
+                    .toArray(String[]::new);
         } else {
-            queryParameters = Collections.emptyList();
+            queryParameters = NO_QUERY_PARAMETERS;
         }
     }
 
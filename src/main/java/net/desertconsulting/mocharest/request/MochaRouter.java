@@ -0,0 +1,293 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A segment-based routing tree for {@link MochaRequestHandler}s registered
+ * for the same HTTP method. Literal path segments are resolved by hash lookup,
+ * {parameter_name:type} segments are matched against the type pattern.
+ * When more than one handler matches a path, the first registered one wins.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class MochaRouter {
+
+    private final static Pattern PARAM_SEGMENT = Pattern.compile(
+            "\\{([a-zA-Z_]+):([^}]*)\\}(.*)");
+
+    private final static String REGEX_CHARS = "\\.[]{}()*+?^$|";
+
+    private final Node root = new Node();
+    private final List<Route> fallbackRoutes = new ArrayList<>();
+    private int size;
+
+    /**
+     * Adds a handler to the tree. Handlers whose path can't be split into
+     * plain literal and parameter segments (e.g. they contain regular
+     * expression characters) are kept aside and matched through
+     * {@link MochaRequestHandler#getPathPattern()}.
+     *
+     * @param handler handler to be added
+     */
+    public void add(MochaRequestHandler handler) {
+        int order = size++;
+        String path = handler.getPath();
+        List<Node> segments = parse(path);
+
+        if (segments == null) {
+            fallbackRoutes.add(new Route(order, handler));
+            return;
+        }
+
+        Node node = root;
+        node.minOrder = Math.min(node.minOrder, order);
+        int params = 0;
+        for (Node segment : segments) {
+            if (segment.pattern != null) {
+                segment.paramIndex = params++;
+            }
+            node = node.child(segment);
+            node.minOrder = Math.min(node.minOrder, order);
+        }
+        if (node.handler == null) {
+            node.handler = handler;
+            node.order = order;
+        }
+    }
+
+    /**
+     * Retrieves the first registered handler matching the given path, along
+     * with the position of its path parameters.
+     *
+     * @param path requested path
+     * @return the match for the first registered handler matching
+     * {@code path} or {@code null} if none matches
+     */
+    public RouteMatch find(String path) {
+        if (path == null) {
+            return null;
+        }
+
+        Node node = search(root, path, 0, null);
+        int bestOrder = node != null ? node.order : Integer.MAX_VALUE;
+
+        for (Route route : fallbackRoutes) {
+            if (route.order >= bestOrder) {
+                break;
+            }
+            RouteMatch match = route.handler.match(path);
+            if (match != null) {
+                return match;
+            }
+        }
+        return node != null ? node.match(path) : null;
+    }
+
+    /**
+     * Walks the tree looking for the terminal node with the lowest
+     * registration order matching the path from {@code start} onwards.
+     *
+     * @param node node matching the previous segment
+     * @param path requested path
+     * @param start index of the first character of the current segment
+     * @param best best terminal node found so far
+     * @return best terminal node found, {@code best} if none better is found
+     */
+    private Node search(Node node, String path, int start, Node best) {
+        int end = path.indexOf('/', start);
+        boolean last = end < 0;
+        if (last) {
+            end = path.length();
+        }
+
+        if (node.literals != null) {
+            Node child = node.literals.get(path.substring(start, end));
+            if (child != null) {
+                best = visit(child, path, end, last, best);
+            }
+        }
+
+        if (node.params != null) {
+            for (Node child : node.params) {
+                if (child.matches(path, start, end)) {
+                    best = visit(child, path, end, last, best);
+                }
+            }
+        }
+        return best;
+    }
+
+    private Node visit(Node child, String path, int end, boolean last,
+            Node best) {
+        int bestOrder = best != null ? best.order : Integer.MAX_VALUE;
+        if (child.minOrder >= bestOrder) {
+            return best;
+        }
+        if (last) {
+            return child.order < bestOrder ? child : best;
+        }
+        return search(child, path, end + 1, best);
+    }
+
+    /**
+     * Splits a handler's path into segment nodes.
+     *
+     * @param path handler's path
+     * @return list of segments or {@code null} if the path must be matched by
+     * regular expression
+     */
+    private static List<Node> parse(String path) {
+        List<Node> rv = new ArrayList<>();
+        String[] segments = path.split("/", -1);
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            Matcher matcher = PARAM_SEGMENT.matcher(segment);
+            Node node = new Node();
+            if (i > 0 && matcher.matches()) {
+                node.suffix = matcher.group(3);
+                node.pattern = MochaRequestHandler.PATTERNS.get(matcher.group(2));
+                if (node.pattern == null || isRegex(node.suffix)) {
+                    return null;
+                }
+            } else if (isRegex(segment)) {
+                return null;
+            } else {
+                node.literal = segment;
+            }
+            rv.add(node);
+        }
+        return rv;
+    }
+
+    /**
+     * Checks whether a path, or a part of it, contains characters having a
+     * special meaning in regular expressions.
+     *
+     * @param segment the path, or a part of it, to be checked
+     * @return {@code true} if {@code segment} contains any regular expression
+     * character
+     */
+    static boolean isRegex(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            if (REGEX_CHARS.indexOf(segment.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A node of the routing tree, it's either a literal segment or a
+     * parameter segment.
+     */
+    private static class Node {
+
+        String literal;
+        Pattern pattern;
+        String suffix;
+
+        int paramIndex = -1;
+
+        Node parent;
+        Map<String, Node> literals;
+        List<Node> params;
+
+        MochaRequestHandler handler;
+        int order = Integer.MAX_VALUE;
+        int minOrder = Integer.MAX_VALUE;
+
+        /**
+         * Retrieves the child equivalent to {@code segment}, adding it if it
+         * doesn't exist yet.
+         */
+        Node child(Node segment) {
+            if (segment.literal != null) {
+                if (literals == null) {
+                    literals = new HashMap<>();
+                }
+                Node child = literals.get(segment.literal);
+                if (child == null) {
+                    segment.parent = this;
+                    literals.put(segment.literal, segment);
+                    child = segment;
+                }
+                return child;
+            }
+
+            if (params == null) {
+                params = new ArrayList<>();
+            }
+            for (Node param : params) {
+                if (param.pattern == segment.pattern && param.suffix.equals(
+                        segment.suffix)) {
+                    return param;
+                }
+            }
+            segment.parent = this;
+            params.add(segment);
+            return segment;
+        }
+
+        /**
+         * Builds the match for a terminal node, walking back to the root and
+         * the path backwards, one segment at a time.
+         */
+        RouteMatch match(String path) {
+            int count = handler.pathParameterList.length;
+            if (count == 0) {
+                return new RouteMatch(handler, path, RouteMatch.NO_SPANS);
+            }
+
+            int[] spans = new int[count << 1];
+            int end = path.length();
+            for (Node node = this; node.parent != null; node = node.parent) {
+                int start = path.lastIndexOf('/', end - 1) + 1;
+                if (node.paramIndex >= 0) {
+                    spans[node.paramIndex << 1] = start;
+                    spans[(node.paramIndex << 1) + 1] = end - node.suffix.
+                            length();
+                }
+                end = start - 1;
+            }
+            return new RouteMatch(handler, path, spans);
+        }
+
+        boolean matches(String path, int start, int end) {
+            int valueEnd = end - suffix.length();
+            return valueEnd >= start
+                    && path.startsWith(suffix, valueEnd)
+                    && pattern.matcher(path).region(start, valueEnd).matches();
+        }
+    }
+
+    private static class Route {
+
+        final int order;
+        final MochaRequestHandler handler;
+
+        Route(int order, MochaRequestHandler handler) {
+            this.order = order;
+            this.handler = handler;
+        }
+    }
+}
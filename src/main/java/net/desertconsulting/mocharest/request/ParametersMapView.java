@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import javax.servlet.ServletRequest;
+
+/**
+ * A read-only view over a request's parameter map. Parameters with a single
+ * value are seen as that value, any other parameter as its array of values.
+ * The servlet parameter map is retrieved on first access and values are
+ * unwrapped as they are read, nothing is copied.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+class ParametersMapView extends AbstractMap<String, Object> {
+
+    private final ServletRequest request;
+    private Map<String, String[]> parameters;
+    private Set<Map.Entry<String, Object>> entrySet;
+
+    /**
+     * Initialize a new instance of {@link ParametersMapView}.
+     * @param request request whose parameters are exposed
+     */
+    ParametersMapView(ServletRequest request) {
+        this.request = request;
+    }
+
+    @Override
+    public Object get(Object key) {
+        return unwrap(parameters().get(key));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return parameters().containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return parameters().size();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, Object>>() {
+                @Override
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    Iterator<Map.Entry<String, String[]>> it = parameters().
+                            entrySet().iterator();
+                    return new Iterator<Map.Entry<String, Object>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<String, Object> next() {
+                            Map.Entry<String, String[]> entry = it.next();
+                            return new SimpleImmutableEntry<>(entry.getKey(),
+                                    unwrap(entry.getValue()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return parameters().size();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private Map<String, String[]> parameters() {
+        if (parameters == null) {
+            parameters = request.getParameterMap();
+        }
+        return parameters;
+    }
+
+    private static Object unwrap(String[] value) {
+        return value == null || value.length != 1 ? value : value[0];
+    }
+}
@@ -15,8 +15,6 @@
  */
 package net.desertconsulting.mocharest.request;
 
-import java.util.function.Function;
-
 /**
  * This class contains value converter for a named path parameter
  *
@@ -31,5 +29,5 @@ class PathParam {
     /**
      * Function to convert a path parameter string to the appropriate value.
      */
-    public Function<String, Object> convert;
+    public PathParamConverter convert;
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+/**
+ * Converts the value of a path parameter, read straight from the requested
+ * path, to the appropriate type.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+@FunctionalInterface
+public interface PathParamConverter {
+
+    /**
+     * Converts the characters of {@code s} between {@code start} and
+     * {@code end}.
+     *
+     * @param s character sequence holding the value, usually the whole path
+     * @param start index of the first character of the value
+     * @param end index following the last character of the value
+     * @return the converted value
+     * @throws IllegalArgumentException the value can't be converted
+     */
+    Object convert(CharSequence s, int start, int end);
+
+    /**
+     * Converts the whole {@code s}.
+     *
+     * @param s the value to be converted
+     * @return the converted value
+     * @throws IllegalArgumentException the value can't be converted
+     */
+    default Object apply(CharSequence s) {
+        return convert(s, 0, s.length());
+    }
+}
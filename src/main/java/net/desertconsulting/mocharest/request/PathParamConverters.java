@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+import java.util.Arrays;
+
+/**
+ * Built-in {@link PathParamConverter}s. They parse values in place, without
+ * copying them out of the path.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+final class PathParamConverters {
+
+    private final static byte[] HEX_DIGITS = new byte[128];
+
+    static {
+        Arrays.fill(HEX_DIGITS, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_DIGITS['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_DIGITS['a' + i] = (byte) (10 + i);
+            HEX_DIGITS['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private PathParamConverters() {
+    }
+
+    static Object toString(CharSequence s, int start, int end) {
+        return s.subSequence(start, end).toString();
+    }
+
+    static Object toInt(CharSequence s, int start, int end) {
+        long rv = parse(s, start, end, Integer.MIN_VALUE);
+        return (int) rv;
+    }
+
+    static Object toLong(CharSequence s, int start, int end) {
+        return parse(s, start, end, Long.MIN_VALUE);
+    }
+
+    static Object toFloat(CharSequence s, int start, int end) {
+        return Float.parseFloat(s.subSequence(start, end).toString());
+    }
+
+    static Object toDouble(CharSequence s, int start, int end) {
+        return Double.parseDouble(s.subSequence(start, end).toString());
+    }
+
+    /**
+     * Decodes a hexadecimal value to the big-endian two's-complement bytes of
+     * a non-negative number, as {@link java.math.BigInteger#toByteArray()}
+     * would.
+     */
+    static Object toBytes(CharSequence s, int start, int end) {
+        if (start >= end) {
+            throw new NumberFormatException("zero length");
+        }
+
+        int first = start;
+        while (first < end && hex(s, first) == 0) {
+            first++;
+        }
+
+        int digits = end - first;
+        if (digits == 0) {
+            return new byte[1];
+        }
+
+        int length = (digits + 1) >> 1;
+        int lead = (digits & 1) == 1 ? hex(s, first) : (hex(s, first) << 4
+                | hex(s, first + 1));
+        int offset = (lead & 0x80) != 0 ? 1 : 0;
+        byte[] rv = new byte[length + offset];
+
+        int pos = end;
+        for (int i = rv.length - 1; i >= offset; i--) {
+            int low = hex(s, --pos);
+            int high = pos > first ? hex(s, --pos) : 0;
+            rv[i] = (byte) (high << 4 | low);
+        }
+        return rv;
+    }
+
+    private static int hex(CharSequence s, int index) {
+        char c = s.charAt(index);
+        int rv = c < 128 ? HEX_DIGITS[c] : -1;
+        if (rv < 0) {
+            throw new NumberFormatException(String.format(
+                    "'%c' is not a hexadecimal digit", c));
+        }
+        return rv;
+    }
+
+    /**
+     * Parses a signed decimal number, accumulating negatively as
+     * {@link Long#parseLong(java.lang.String)} does to reach {@code min}
+     * without overflowing.
+     */
+    private static long parse(CharSequence s, int start, int end, long min) {
+        if (start >= end) {
+            throw new NumberFormatException("zero length");
+        }
+
+        boolean negative = false;
+        int i = start;
+        char c = s.charAt(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            if (++i == end) {
+                throw new NumberFormatException(String.valueOf(c));
+            }
+        }
+
+        long limit = negative ? min : min + 1;
+        long multmin = limit / 10;
+        long rv = 0;
+        for (; i < end; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || rv < multmin) {
+                throw new NumberFormatException(s.subSequence(start, end).
+                        toString());
+            }
+            rv *= 10;
+            if (rv < limit + digit) {
+                throw new NumberFormatException(s.subSequence(start, end).
+                        toString());
+            }
+            rv -= digit;
+        }
+        return negative ? rv : -rv;
+    }
+}
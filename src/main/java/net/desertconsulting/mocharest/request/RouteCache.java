@@ -0,0 +1,227 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size-bounded, thread-safe, least-recently-used cache of
+ * {@link RouteMatch}es keyed by HTTP method and path. Entries are spread
+ * over independently locked stripes, each one evicting its own least recently
+ * used entry. Every {@link #clear()} starts a new generation: matches found
+ * under an older one, racing with the registration of a handler, aren't
+ * cached.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class RouteCache {
+
+    private final static int MAX_STRIPES = 16;
+
+    private final Stripe[] stripes;
+    private final int maxSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Initialize a new instance of {@link RouteCache}.
+     *
+     * @param maxSize maximum number of entries held by the cache
+     */
+    public RouteCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize");
+        }
+        this.maxSize = maxSize;
+        int count = Math.min(MAX_STRIPES, Integer.highestOneBit(maxSize));
+        // the first maxSize % count stripes hold one more entry, so that the
+        // capacities add up to maxSize
+        int stripeSize = maxSize / count;
+        int larger = maxSize % count;
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(i < larger ? stripeSize + 1 : stripeSize);
+        }
+    }
+
+    /**
+     * Retrieves a cached match.
+     *
+     * @param method HTTP method of the request
+     * @param path path of the request
+     * @return the cached match or {@code null}
+     */
+    public RouteMatch get(String method, String path) {
+        if (path == null) {
+            return null;
+        }
+        Key key = new Key(method, path);
+        Stripe stripe = stripeFor(key);
+        RouteMatch rv;
+        synchronized (stripe) {
+            rv = stripe.get(key);
+        }
+        if (rv != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return rv;
+    }
+
+    /**
+     * Caches a match found under the current generation.
+     *
+     * @param method HTTP method of the request
+     * @param match match to be cached
+     */
+    public void put(String method, RouteMatch match) {
+        put(method, match, generation.get());
+    }
+
+    /**
+     * Caches a match, unless the cache has been cleared since it was looked
+     * up.
+     *
+     * @param method HTTP method of the request
+     * @param match match to be cached
+     * @param generation value of {@link #getGeneration()} read before
+     * looking the match up
+     */
+    public void put(String method, RouteMatch match, long generation) {
+        Key key = new Key(method, match.getPath());
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            // a clear starting after this check waits for the stripe
+            if (generation == this.generation.get()) {
+                stripe.put(key, match);
+            }
+        }
+    }
+
+    /**
+     * Current generation of the cache, to be read before looking up a match
+     * to be cached.
+     *
+     * @return current generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Removes all the cached matches and starts a new generation.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * Number of cached matches.
+     *
+     * @return number of cached matches
+     */
+    public int size() {
+        int rv = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                rv += stripe.size();
+            }
+        }
+        return rv;
+    }
+
+    /**
+     * Maximum number of entries held by the cache.
+     *
+     * @return maximum number of entries held by the cache
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Number of lookups answered by the cache.
+     *
+     * @return number of lookups answered by the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of lookups not answered by the cache.
+     *
+     * @return number of lookups not answered by the cache
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private Stripe stripeFor(Key key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+
+    private static class Stripe extends LinkedHashMap<Key, RouteMatch> {
+
+        private final int maxSize;
+
+        Stripe(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, RouteMatch> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private static class Key {
+
+        private final String method;
+        private final String path;
+
+        Key(String method, String path) {
+            this.method = method;
+            this.path = path;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * method.hashCode() + path.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return method.equals(other.method) && path.equals(other.path);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of requests a route serves at the same time. Requests
+ * over the limit wait for a free slot, up to a maximum number of waiting
+ * requests and a maximum waiting time; the others are rejected right away.
+ * Every route has its own limiter, shared by the engines of the web
+ * application through {@link RouteLimiters}; no lock is shared between
+ * routes.
+ * <p>
+ * Waiting requests block the container thread serving them, so a
+ * {@code maxQueue} greater than 0 trades container threads for fewer
+ * rejections. Requests served by a pool of engines wait before borrowing an
+ * engine, a standalone engine isn't held while waiting.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class RouteLimiter {
+
+    /**
+     * Default number of seconds clients are asked to wait before retrying a
+     * rejected request.
+     */
+    public final static int DEFAULT_RETRY_AFTER = 1;
+
+    /**
+     * Default number of milliseconds a request waits for a free slot.
+     */
+    public final static long DEFAULT_QUEUE_TIMEOUT = 1000;
+
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final long queueTimeout;
+    private final int retryAfter;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Initialize a new instance of {@link RouteLimiter}.
+     *
+     * @param maxConcurrent maximum number of requests served at the same time
+     * @param maxQueue maximum number of requests waiting for a free slot
+     * @param queueTimeout maximum number of milliseconds a request waits for a
+     * free slot
+     * @param retryAfter number of seconds clients are asked to wait before
+     * retrying a rejected request
+     */
+    public RouteLimiter(int maxConcurrent, int maxQueue, long queueTimeout,
+            int retryAfter) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxConcurrent");
+        }
+        if (maxQueue < 0) {
+            throw new IllegalArgumentException("maxQueue");
+        }
+        if (queueTimeout < 0) {
+            throw new IllegalArgumentException("queueTimeout");
+        }
+        if (retryAfter < 0) {
+            throw new IllegalArgumentException("retryAfter");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueue = maxQueue;
+        this.queueTimeout = queueTimeout;
+        this.retryAfter = retryAfter;
+        permits = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Takes a slot, waiting for one if there's room in the queue, which
+     * blocks the calling thread. Every successful call must be followed by a
+     * call to {@link #release()}.
+     *
+     * @return {@code true} if a slot has been taken, {@code false} if the
+     * request has been rejected
+     */
+    public boolean acquire() {
+        if (permits.tryAcquire()) {
+            accepted.increment();
+            return true;
+        }
+        if (queued.incrementAndGet() <= maxQueue) {
+            try {
+                if (permits.tryAcquire(queueTimeout, TimeUnit.MILLISECONDS)) {
+                    accepted.increment();
+                    return true;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                queued.decrementAndGet();
+            }
+        } else {
+            queued.decrementAndGet();
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Whether another limiter has the same settings.
+     *
+     * @param other limiter to compare
+     * @return {@code true} if both limiters have the same settings
+     */
+    public boolean hasSameLimits(RouteLimiter other) {
+        return maxConcurrent == other.maxConcurrent
+                && maxQueue == other.maxQueue
+                && queueTimeout == other.queueTimeout
+                && retryAfter == other.retryAfter;
+    }
+
+    /**
+     * Gives a slot back.
+     */
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * Maximum number of requests served at the same time.
+     * @return maximum number of requests served at the same time
+     */
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Maximum number of requests waiting for a free slot.
+     * @return maximum number of requests waiting for a free slot
+     */
+    public int getMaxQueue() {
+        return maxQueue;
+    }
+
+    /**
+     * Maximum time a request waits for a free slot.
+     * @return maximum waiting time, in milliseconds
+     */
+    public long getQueueTimeout() {
+        return queueTimeout;
+    }
+
+    /**
+     * Number of seconds clients are asked to wait before retrying a rejected
+     * request.
+     * @return value of the {@code Retry-After} header of rejected requests
+     */
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Number of requests being served.
+     * @return number of requests being served
+     */
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /**
+     * Number of requests waiting for a free slot.
+     * @return number of requests waiting for a free slot
+     */
+    public int getQueued() {
+        return Math.max(0, Math.min(queued.get(), maxQueue));
+    }
+
+    /**
+     * Number of requests that have taken a slot.
+     * @return number of accepted requests
+     */
+    public long getAcceptedCount() {
+        return accepted.sum();
+    }
+
+    /**
+     * Number of requests rejected.
+     * @return number of rejected requests
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.servlet.ServletContext;
+
+/**
+ * Limiters of the routes of a web application, keyed by method and URL
+ * pattern, e.g. {@code "GET /items/{id:int}"}. The engines of a pool, and the
+ * engines replacing them on reload, share the same limiter for the same
+ * route, so that the limit applies to the whole application. The registry is
+ * stored as the {@link #ATTRIBUTE} context attribute, to monitor the requests
+ * the routes serve and reject.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class RouteLimiters {
+
+    /**
+     * Name of the context attribute holding the registry.
+     */
+    public final static String ATTRIBUTE = RouteLimiters.class.getName();
+
+    private final ConcurrentMap<String, RouteLimiter> limiters
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the registry of a web application, creating it the first time.
+     *
+     * @param context servlet context, if {@code null} a new registry is
+     * returned
+     * @return the registry of the web application
+     */
+    public static RouteLimiters get(ServletContext context) {
+        if (context == null) {
+            return new RouteLimiters();
+        }
+        synchronized (RouteLimiters.class) {
+            Object rv = context.getAttribute(ATTRIBUTE);
+            if (rv instanceof RouteLimiters) {
+                return (RouteLimiters) rv;
+            }
+            RouteLimiters registry = new RouteLimiters();
+            context.setAttribute(ATTRIBUTE, registry);
+            return registry;
+        }
+    }
+
+    /**
+     * Registers the limiter of a route. The limiter already registered for the
+     * route is kept, with its slots and counters, if it has the same settings,
+     * otherwise it's replaced.
+     *
+     * @param method HTTP method of the route
+     * @param path URL pattern of the route
+     * @param limiter limiter created from the route's options
+     * @return the limiter to be used by the route
+     */
+    public RouteLimiter register(String method, String path,
+            RouteLimiter limiter) {
+        return limiters.merge(method + " " + path, limiter,
+                (current, created) -> current.hasSameLimits(created)
+                ? current : created);
+    }
+
+    /**
+     * Returns the limiters of the routes.
+     *
+     * @return a read-only view of the limiters, keyed by method and URL
+     * pattern
+     */
+    public Map<String, RouteLimiter> getLimiters() {
+        return Collections.unmodifiableMap(limiters);
+    }
+}
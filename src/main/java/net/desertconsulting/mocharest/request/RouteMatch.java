@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Result of routing a path: the matching {@link MochaRequestHandler} and the
+ * position of every path parameter value within the path.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class RouteMatch {
+
+    final static int[] NO_SPANS = new int[0];
+
+    private final MochaRequestHandler handler;
+    private final String path;
+    private final int[] spans;
+
+    /**
+     * Initialize a new instance of {@link RouteMatch}.
+     *
+     * @param handler matching handler
+     * @param path matched path
+     * @param spans start and end index of every path parameter value, in the
+     * order the parameters are declared by the handler's URL
+     */
+    RouteMatch(MochaRequestHandler handler, String path, int[] spans) {
+        this.handler = handler;
+        this.path = path;
+        this.spans = spans;
+    }
+
+    /**
+     * Handler matching the path.
+     * @return handler matching the path
+     */
+    public MochaRequestHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Returns the same match for another handler with the same URL, e.g. the
+     * peer of the matching handler in another engine, sparing the matching.
+     * @param handler handler with the same URL as the matching one
+     * @return the match for {@code handler}
+     */
+    public RouteMatch withHandler(MochaRequestHandler handler) {
+        return new RouteMatch(handler, path, spans);
+    }
+
+    /**
+     * Matched path.
+     * @return matched path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Converts the path parameters found in the matched path. Only the
+     * position of the values is kept by the match, which can be cached and
+     * shared by many requests: every call converts the values again and
+     * returns a new map, owned by the caller.
+     * @return a new map of the converted path parameters
+     * @throws BadRequestParamException if a path parameter can't be converted
+     */
+    public Map<String, Object> getPathParameters() {
+        PathParam[] params = handler.pathParameterList;
+        Map<String, Object> rv = new HashMap<>(Math.max(16, params.length
+                << 1));
+        for (int i = 0; i < params.length; i++) {
+            PathParam param = params[i];
+            try {
+                rv.put(param.name, param.convert.convert(path, getStart(i),
+                        getEnd(i)));
+            } catch (Exception ex) {
+                Logger.getLogger(RouteMatch.class.getName()).log(Level.SEVERE,
+                        null, ex);
+                throw new BadRequestParamException(param.name, ex);
+            }
+        }
+        return rv;
+    }
+
+    /**
+     * Index of the first character of the {@code index}-th path parameter.
+     */
+    int getStart(int index) {
+        return spans[index << 1];
+    }
+
+    /**
+     * Index following the last character of the {@code index}-th path
+     * parameter.
+     */
+    int getEnd(int index) {
+        return spans[(index << 1) + 1];
+    }
+}
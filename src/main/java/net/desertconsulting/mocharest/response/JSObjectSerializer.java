@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.response;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
+import java.util.Map;
+import jdk.nashorn.api.scripting.JSObject;
+import jdk.nashorn.api.scripting.ScriptObjectMirror;
+
+/**
+ * Jackson serializer writing Javascript objects and arrays straight to the
+ * generator, close to what {@code JSON.stringify} does: functions are left out
+ * of objects and written as {@code null} in arrays, {@code undefined} values
+ * are written as {@code null} (object mirrors don't tell them apart),
+ * non-finite numbers are written as {@code null}, integral numbers are written
+ * without fraction and dates are written as ISO strings.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class JSObjectSerializer extends StdSerializer<JSObject> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final static double MAX_SAFE_INTEGER = 9007199254740991d;
+
+    /**
+     * Jackson module registering the serializer for {@link JSObject}.
+     */
+    public final static SimpleModule MODULE = new SimpleModule(
+            "mocharest-nashorn").addSerializer(JSObject.class,
+                    new JSObjectSerializer());
+
+    public JSObjectSerializer() {
+        super(JSObject.class);
+    }
+
+    @Override
+    public void serialize(JSObject value, JsonGenerator gen,
+            SerializerProvider provider) throws IOException {
+        if (value.isFunction()) {
+            gen.writeNull();
+        } else if (value.isArray()) {
+            writeArray(value, gen, provider);
+        } else if ("Date".equals(value.getClassName())) {
+            writeDate(value, gen, provider);
+        } else {
+            writeObject(value, gen, provider);
+        }
+    }
+
+    private void writeArray(JSObject value, JsonGenerator gen,
+            SerializerProvider provider) throws IOException {
+        int length = ((Number) value.getMember("length")).intValue();
+        gen.writeStartArray(length);
+        for (int i = 0; i < length; i++) {
+            Object item = value.getSlot(i);
+            if (isSkipped(item)) {
+                gen.writeNull();
+            } else {
+                writeValue(item, gen, provider);
+            }
+        }
+        gen.writeEndArray();
+    }
+
+    private void writeObject(JSObject value, JsonGenerator gen,
+            SerializerProvider provider) throws IOException {
+        gen.writeStartObject();
+        if (value instanceof ScriptObjectMirror) {
+            // one pass over the object, instead of a lookup per key
+            for (Map.Entry<String, Object> entry
+                    : ((ScriptObjectMirror) value).entrySet()) {
+                writeField(entry.getKey(), entry.getValue(), gen, provider);
+            }
+        } else {
+            for (String key : value.keySet()) {
+                writeField(key, value.getMember(key), gen, provider);
+            }
+        }
+        gen.writeEndObject();
+    }
+
+    private void writeField(String name, Object value, JsonGenerator gen,
+            SerializerProvider provider) throws IOException {
+        if (!isSkipped(value)) {
+            gen.writeFieldName(name);
+            writeValue(value, gen, provider);
+        }
+    }
+
+    private void writeValue(Object value, JsonGenerator gen,
+            SerializerProvider provider) throws IOException {
+        if (value == null) {
+            gen.writeNull();
+        } else if (value instanceof String) {
+            gen.writeString((String) value);
+        } else if (value instanceof Integer) {
+            gen.writeNumber((Integer) value);
+        } else if (value instanceof Double) {
+            writeNumber((Double) value, gen);
+        } else if (value instanceof Boolean) {
+            gen.writeBoolean((Boolean) value);
+        } else if (value instanceof Long) {
+            gen.writeNumber((Long) value);
+        } else if (value instanceof JSObject) {
+            serialize((JSObject) value, gen, provider);
+        } else if (value instanceof CharSequence) {
+            gen.writeString(value.toString());
+        } else if (ScriptObjectMirror.isUndefined(value)) {
+            gen.writeNull();
+        } else {
+            provider.defaultSerializeValue(value, gen);
+        }
+    }
+
+    private void writeDate(JSObject date, JsonGenerator gen,
+            SerializerProvider provider) throws IOException {
+        Object time = date instanceof ScriptObjectMirror
+                ? ((ScriptObjectMirror) date).callMember("getTime") : null;
+        if (time instanceof Number && Double.isFinite(((Number) time).
+                doubleValue())) {
+            writeValue(((ScriptObjectMirror) date).callMember("toISOString"),
+                    gen, provider);
+        } else {
+            gen.writeNull();
+        }
+    }
+
+    private static void writeNumber(double value, JsonGenerator gen) throws
+            IOException {
+        if (!Double.isFinite(value)) {
+            gen.writeNull();
+        } else if (value == Math.rint(value)
+                && Math.abs(value) <= MAX_SAFE_INTEGER) {
+            gen.writeNumber((long) value);
+        } else {
+            gen.writeNumber(value);
+        }
+    }
+
+    private static boolean isSkipped(Object value) {
+        return ScriptObjectMirror.isUndefined(value)
+                || value instanceof JSObject && ((JSObject) value).isFunction();
+    }
+}
@@ -36,6 +36,11 @@ public class MochaResponse extends HttpServletResponseWrapper {
     private final static XmlMapper XML_MAPPER = new XmlMapper();
     private final static ObjectMapper JSON_MAPPER = new ObjectMapper();
 
+    static {
+        XML_MAPPER.registerModule(JSObjectSerializer.MODULE);
+        JSON_MAPPER.registerModule(JSObjectSerializer.MODULE);
+    }
+
     public MochaResponse(HttpServletResponse response) {
         super(response);
         cType = MediaType.APPLICATION_JSON;
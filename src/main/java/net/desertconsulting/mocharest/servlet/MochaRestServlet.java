@@ -18,7 +18,12 @@ package net.desertconsulting.mocharest.servlet;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.script.ScriptException;
@@ -28,26 +33,52 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
+import net.desertconsulting.mocharest.RestEngineImpl;
+import net.desertconsulting.mocharest.js.AsyncExecutor;
 import net.desertconsulting.mocharest.js.MochaJsEngine;
+import net.desertconsulting.mocharest.js.MochaJsEnginePool;
+import net.desertconsulting.mocharest.js.TimerService;
 
 /**
  * Servlet passing over requests to {@link MochaJsEngine} and handling errors.
+ * When the {@link MochaJsEnginePool#POOL_SIZE_PARAM} context parameter is set,
+ * requests are passed over to a {@link MochaJsEnginePool} instead.
+ * When the {@link #WATCH_PARAM} context parameter is {@code true}, changes to
+ * the application's scripts are loaded into a new engine, replacing the
+ * current one once it has been warmed up, see
+ * {@link net.desertconsulting.mocharest.RestEngine#warmUp(jdk.nashorn.api.scripting.JSObject)}. Requests being handled complete on the old engine,
+ * whose timers are cancelled once they have, and once its pending timeouts
+ * have run, waiting at most the async timeout.
  * 
  * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
  */
 public class MochaRestServlet extends HttpServlet {
 
-    MochaJsEngine engine;
+    /**
+     * Name of the context parameter enabling the reload of the application
+     * when its scripts change.
+     */
+    public final static String WATCH_PARAM = "mocharest.watch";
+
+    private final static String INDEX = "/index.js";
+    private final static long WATCH_QUIET_PERIOD = 500;
+
+    volatile MochaJsEngine engine;
+    volatile MochaJsEnginePool pool;
+    ScriptWatcher watcher;
 
     @Override
     public void init() throws ServletException {
         super.init();
 
-        try (InputStreamReader stream = new InputStreamReader(
-                getServletContext().getResourceAsStream(
-                        "/index.js"))) {
-            engine = new MochaJsEngine(getServletContext());
-            engine.eval(stream);
+        MochaJsEngine.initCodeCache(getServletContext());
+        try {
+            load(new InputStreamReader(getServletContext().
+                    getResourceAsStream(INDEX)));
+            if (Boolean.parseBoolean(getServletContext().getInitParameter(
+                    WATCH_PARAM))) {
+                watch();
+            }
         } catch (IOException | ScriptException ex) {
             Logger.getLogger(MochaRestServlet.class.getName()).
                     log(Level.SEVERE, null, ex);
@@ -55,14 +86,183 @@ public class MochaRestServlet extends HttpServlet {
         }
     }
 
+    @Override
+    public void destroy() {
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException ex) {
+                Logger.getLogger(MochaRestServlet.class.getName()).
+                        log(Level.WARNING, null, ex);
+            }
+            watcher = null;
+        }
+        close(engine, pool);
+        AsyncExecutor.shutdown(getServletContext());
+        TimerService.shutdown(getServletContext());
+        super.destroy();
+    }
+
+    /**
+     * Builds a new engine, or pool of engines, evaluating the script read
+     * from {@code reader}, warms it up and swaps it with the current one.
+     *
+     * @param reader source of index.js, it's closed when done
+     * @throws IOException an error occurred reading the script
+     * @throws ScriptException an error occurred evaluating the script
+     */
+    private void load(Reader reader) throws IOException, ScriptException {
+        try (Reader stream = reader) {
+            MochaJsEngine oldEngine = engine;
+            MochaJsEnginePool oldPool = pool;
+            int poolSize = getPoolSize();
+            // nothing is published before the warm-up has succeeded
+            if (poolSize > 0) {
+                MochaJsEnginePool rv = new MochaJsEnginePool(
+                        getServletContext(), poolSize, read(stream));
+                warmUp(rv::warmUp, rv::close);
+                pool = rv;
+            } else {
+                MochaJsEngine rv = new MochaJsEngine(getServletContext());
+                rv.eval(stream);
+                warmUp(rv::warmUp, rv::close);
+                engine = rv;
+            }
+            retire(oldEngine, oldPool);
+        }
+    }
+
+    /**
+     * Runs a warm-up, closing the new engine if it fails.
+     */
+    private static void warmUp(WarmUp warmUp, Runnable close) throws
+            ScriptException {
+        try {
+            warmUp.run();
+        } catch (ScriptException | RuntimeException ex) {
+            close.run();
+            throw ex;
+        }
+    }
+
+    @FunctionalInterface
+    private interface WarmUp {
+
+        void run() throws ScriptException;
+    }
+
+    /**
+     * Closes a replaced engine once the requests it's handling have completed
+     * and its pending timeouts have run, which may settle their
+     * {@link net.desertconsulting.mocharest.js.Deferred}s. The wait is bound
+     * by the async timeout, after which deferred responses time out anyway.
+     */
+    private void retire(MochaJsEngine engine, MochaJsEnginePool pool) {
+        long timeout = getDrainTimeout();
+        try {
+            boolean drained = true;
+            if (engine != null) {
+                drained = engine.drain(timeout);
+            }
+            if (pool != null) {
+                drained &= pool.drain(timeout);
+            }
+            if (!drained) {
+                Logger.getLogger(MochaRestServlet.class.getName()).log(
+                        Level.WARNING, "replaced engine not drained within "
+                        + "{0} ms, closing it", timeout);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close(engine, pool);
+        }
+    }
+
+    private long getDrainTimeout() {
+        String timeout = getServletContext().getInitParameter(
+                RestEngineImpl.ASYNC_TIMEOUT_PARAM);
+        return timeout != null ? Long.parseLong(timeout.trim())
+                : RestEngineImpl.DEFAULT_ASYNC_TIMEOUT;
+    }
+
+    /**
+     * Cancels the timers of replaced or destroyed engines.
+     */
+    private static void close(MochaJsEngine engine, MochaJsEnginePool pool) {
+        if (engine != null) {
+            engine.close();
+        }
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private void watch() throws IOException {
+        String root = getServletContext().getRealPath("/");
+        if (root == null) {
+            Logger.getLogger(MochaRestServlet.class.getName()).log(
+                    Level.WARNING, "{0} is set but the application isn''t "
+                    + "deployed on the file system", WATCH_PARAM);
+            return;
+        }
+        Path dir = Paths.get(root);
+        watcher = new ScriptWatcher(dir, WATCH_QUIET_PERIOD, () -> reload(
+                dir.resolve(INDEX.substring(1))));
+    }
+
+    /**
+     * Loads the application from {@code index}. If loading fails the current
+     * engine is kept.
+     *
+     * @param index path to index.js
+     * @return {@code true} if the application has been reloaded
+     */
+    boolean reload(Path index) {
+        try {
+            load(Files.newBufferedReader(index, StandardCharsets.UTF_8));
+            Logger.getLogger(MochaRestServlet.class.getName()).log(Level.INFO,
+                    "{0} reloaded", index);
+            return true;
+        } catch (IOException | ScriptException | RuntimeException ex) {
+            Logger.getLogger(MochaRestServlet.class.getName()).
+                    log(Level.SEVERE, "error reloading " + index, ex);
+            return false;
+        }
+    }
+
+    private int getPoolSize() {
+        String size = getServletContext().getInitParameter(
+                MochaJsEnginePool.POOL_SIZE_PARAM);
+        return size != null ? Integer.parseInt(size.trim()) : 0;
+    }
+
+    private static String read(Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[4096];
+        int read;
+        while ((read = reader.read(buffer)) >= 0) {
+            sb.append(buffer, 0, read);
+        }
+        return sb.toString();
+    }
+
     @Override
     protected void service(HttpServletRequest req, HttpServletResponse resp)
             throws ServletException, IOException {
         try {
-            engine.handle(req, resp);
+            MochaJsEnginePool current = pool;
+            if (current != null) {
+                current.handle(req, resp);
+            } else {
+                engine.handle(req, resp);
+            }
         } catch (WebApplicationException ex) {
 
             Response response = ex.getResponse();
+            // e.g. Retry-After
+            response.getStringHeaders().forEach((name, values) -> values.
+                    forEach(value -> resp.addHeader(name, value)));
 
             try (StringWriter sw = new StringWriter();
                     PrintWriter ostream = new PrintWriter(sw)) {
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.servlet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Watches a directory tree for changes to Javascript files on a background
+ * thread. Changes coming close together are notified once, after no other
+ * change has been seen for a quiet period.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+class ScriptWatcher implements Closeable {
+
+    private final WatchService watchService;
+    private final Thread thread;
+    private final long quietPeriod;
+    private final Runnable onChange;
+
+    /**
+     * Initialize a new instance of {@link ScriptWatcher} and starts watching.
+     *
+     * @param root root of the directory tree to be watched
+     * @param quietPeriod milliseconds without changes before notifying them
+     * @param onChange callback run, on the watching thread, when files have
+     * changed
+     * @throws IOException an error occurred registering the directories
+     */
+    ScriptWatcher(Path root, long quietPeriod, Runnable onChange) throws
+            IOException {
+        this.quietPeriod = quietPeriod;
+        this.onChange = onChange;
+        watchService = FileSystems.getDefault().newWatchService();
+        register(root);
+        thread = new Thread(this::watch, "mocharest-script-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void register(Path dir) throws IOException {
+        try (Stream<Path> dirs = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) dirs.filter(Files::isDirectory)::
+                    iterator) {
+                path.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                boolean changed = process(watchService.take());
+                WatchKey key;
+                while ((key = watchService.poll(quietPeriod,
+                        TimeUnit.MILLISECONDS)) != null) {
+                    changed |= process(key);
+                }
+                if (changed) {
+                    try {
+                        onChange.run();
+                    } catch (RuntimeException ex) {
+                        Logger.getLogger(ScriptWatcher.class.getName()).log(
+                                Level.SEVERE, null, ex);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // closed
+        }
+    }
+
+    /**
+     * Consumes the events of a key, registering new directories.
+     *
+     * @return {@code true} if a Javascript file has changed
+     */
+    private boolean process(WatchKey key) {
+        boolean rv = false;
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                rv = true;
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.
+                    isDirectory(path)) {
+                try {
+                    register(path);
+                } catch (IOException ex) {
+                    Logger.getLogger(ScriptWatcher.class.getName()).log(
+                            Level.WARNING, null, ex);
+                }
+                rv = true;
+            } else if (path.getFileName().toString().endsWith(".js")) {
+                rv = true;
+            }
+        }
+        key.reset();
+        return rv;
+    }
+
+    /**
+     * Stops watching.
+     *
+     * @throws IOException an error occurred closing the watch service
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+}
@@ -28,6 +28,7 @@ import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import javax.servlet.AsyncContext;
 import javax.servlet.ReadListener;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -49,6 +50,7 @@ public class MockedRequest extends MockUp<HttpServletRequest> {
     private String contentType;
     private final boolean throwIOExceptionOnRead;
     private String acceptType;
+    private AsyncContext asyncContext;
 
     public MockedRequest(String method, String testBody, String mimeType,
             String path, String query, boolean throwIOExceptionOnOpen, boolean throwIOExceptionOnRead,
@@ -109,6 +111,19 @@ public class MockedRequest extends MockUp<HttpServletRequest> {
         return null;
     }
 
+    @Mock
+    public boolean isAsyncSupported() {
+        return asyncContext != null;
+    }
+
+    @Mock
+    public AsyncContext startAsync() {
+        if (asyncContext == null) {
+            throw new IllegalStateException("async not supported");
+        }
+        return asyncContext;
+    }
+
     @Mock
     public String getPathInfo() {
         return path;
@@ -195,6 +210,7 @@ public class MockedRequest extends MockUp<HttpServletRequest> {
         private String acceptType;
         private String contentType;
         private boolean throwIOExceptionOnRead;
+        private AsyncContext asyncContext;
 
         public Builder withMethod(String method) {
             this.method = method;
@@ -241,10 +257,17 @@ public class MockedRequest extends MockUp<HttpServletRequest> {
             return this;
         }
 
+        public Builder withAsyncContext(AsyncContext asyncContext) {
+            this.asyncContext = asyncContext;
+            return this;
+        }
+
         public MockedRequest build() {
-            return new MockedRequest(method, testBody, mimeType, path, query
+            MockedRequest rv = new MockedRequest(method, testBody, mimeType, path, query
                     != null ? query : "", throwIOExceptionOnOpen, throwIOExceptionOnRead,
                     acceptType, contentType);
+            rv.asyncContext = asyncContext;
+            return rv;
         }
     }
 }
@@ -22,20 +22,30 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import jdk.nashorn.api.scripting.JSObject;
 import jdk.nashorn.internal.runtime.Undefined;
 import mockit.Mock;
 import mockit.MockUp;
+import net.desertconsulting.mocharest.js.Deferred;
 import net.desertconsulting.mocharest.request.MochaRequest;
+import net.desertconsulting.mocharest.request.RouteLimiter;
 import net.desertconsulting.mocharest.response.MochaResponse;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -662,6 +672,74 @@ public class RestEngineImplTest {
         instance.handle(request, response);
     }
 
+    @Test
+    public void testHandleLiteralRoute() throws MalformedURLException {
+        System.out.println("handleLiteralRoute");
+        StringBuilder calls = new StringBuilder();
+        RestEngineImpl instance = new RestEngineImpl(context);
+        instance.get("/test/{id:int}", new JSTestFunction((Object _this, Object... args) -> {
+            calls.append("param");
+            return Undefined.getUndefined();
+        }).getMockInstance());
+        instance.get("/test/new", new JSTestFunction((Object _this, Object... args) -> {
+            calls.append("literal");
+            return Undefined.getUndefined();
+        }).getMockInstance());
+        HttpServletRequest request = MockedRequest.create()
+                .withMethod(RestEngine.GET_METHOD)
+                .withMimeType(MediaType.APPLICATION_JSON)
+                .withPath("/test/new")
+                .build().getMockInstance();
+        instance.handle(request, getTestHandleResponse().getMockInstance());
+        assertEquals("literal", calls.toString());
+    }
+
+    @Test
+    public void testHandleLiteralRouteShadowedByAnEarlierHandler() throws MalformedURLException {
+        System.out.println("handleLiteralRouteShadowedByAnEarlierHandler");
+        StringBuilder calls = new StringBuilder();
+        RestEngineImpl instance = new RestEngineImpl(context);
+        instance.get("/test/{name:string}", new JSTestFunction((Object _this, Object... args) -> {
+            calls.append(((MochaRequest) args[0]).getPathParameter("name"));
+            return Undefined.getUndefined();
+        }).getMockInstance());
+        instance.get("/test/new", new JSTestFunction((Object _this, Object... args) -> {
+            calls.append("literal");
+            return Undefined.getUndefined();
+        }).getMockInstance());
+        HttpServletRequest request = MockedRequest.create()
+                .withMethod(RestEngine.GET_METHOD)
+                .withMimeType(MediaType.APPLICATION_JSON)
+                .withPath("/test/new")
+                .build().getMockInstance();
+        instance.handle(request, getTestHandleResponse().getMockInstance());
+        assertEquals("new", calls.toString());
+    }
+
+    @Test
+    public void testHandleWithRouteCache() throws MalformedURLException {
+        System.out.println("handleWithRouteCache");
+        RestEngineImpl instance = new RestEngineImpl(context);
+        instance.setRouteCacheSize(10);
+        instance.get("/test/{id:int}", new JSTestFunction((Object _this, Object... args) -> {
+            assertEquals(1, ((Map<String, Object>) args[3]).get("id"));
+            return Undefined.getUndefined();
+        }).getMockInstance());
+        for (int i = 0; i < 3; i++) {
+            HttpServletRequest request = MockedRequest.create()
+                    .withMethod(RestEngine.GET_METHOD)
+                    .withMimeType(MediaType.APPLICATION_JSON)
+                    .withPath("/test/1")
+                    .build().getMockInstance();
+            instance.handle(request, getTestHandleResponse().getMockInstance());
+        }
+        assertEquals(2, instance.getRouteCache().getHitCount());
+        assertEquals(1, instance.getRouteCache().getMissCount());
+
+        instance.get("/other");
+        assertEquals(0, instance.getRouteCache().size());
+    }
+
     private void testRegisterHandler2Parameters(String method) throws Exception {
         String url = "/test/{foo:int}";
 
@@ -710,6 +788,200 @@ public class RestEngineImplTest {
         return null;
     }
 
+    @Test
+    public void testHandleDeferred() throws MalformedURLException {
+        System.out.println("handleDeferred");
+        Deferred deferred = new Deferred();
+        RestEngineImpl instance = new RestEngineImpl(context);
+        instance.get("/test", new JSTestFunction((Object _this, Object... args) -> {
+            new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ex) {
+                }
+                deferred.resolve("test");
+            }).start();
+            return deferred;
+        }).getMockInstance());
+        HttpServletRequest request = MockedRequest.create()
+                .withMethod(RestEngine.GET_METHOD)
+                .withMimeType(MediaType.APPLICATION_JSON)
+                .withPath("/test")
+                .build().getMockInstance();
+        MockedResponse response = getTestHandleResponse();
+        instance.handle(request, response.getMockInstance());
+        assertEquals("\"test\"", response.bos.toString());
+    }
+
+    @Test
+    public void testHandleDeferredAsync() throws MalformedURLException {
+        System.out.println("handleDeferredAsync");
+        int[] completed = new int[1];
+        AsyncContext async = new MockUp<AsyncContext>() {
+            @Mock
+            public void complete() {
+                completed[0]++;
+            }
+        }.getMockInstance();
+        Deferred deferred = new Deferred();
+        RestEngineImpl instance = new RestEngineImpl(context);
+        instance.get("/test", new JSTestFunction((Object _this, Object... args) -> deferred).getMockInstance());
+        HttpServletRequest request = MockedRequest.create()
+                .withMethod(RestEngine.GET_METHOD)
+                .withMimeType(MediaType.APPLICATION_JSON)
+                .withPath("/test")
+                .withAsyncContext(async)
+                .build().getMockInstance();
+        MockedResponse response = getTestHandleResponse();
+        instance.handle(request, response.getMockInstance());
+        assertEquals(0, completed[0]);
+        assertEquals("", response.bos.toString());
+
+        deferred.resolve("test");
+        assertEquals(1, completed[0]);
+        assertEquals("\"test\"", response.bos.toString());
+    }
+
+    @Test
+    public void testHandleCompletionStage() throws MalformedURLException {
+        System.out.println("handleCompletionStage");
+        RestEngineImpl instance = new RestEngineImpl(context);
+        instance.get("/test", new JSTestFunction((Object _this, Object... args)
+                -> CompletableFuture.supplyAsync(() -> "test")).getMockInstance());
+        HttpServletRequest request = MockedRequest.create()
+                .withMethod(RestEngine.GET_METHOD)
+                .withMimeType(MediaType.APPLICATION_JSON)
+                .withPath("/test")
+                .build().getMockInstance();
+        MockedResponse response = getTestHandleResponse();
+        instance.handle(request, response.getMockInstance());
+        assertEquals("\"test\"", response.bos.toString());
+    }
+
+    @Test
+    public void testHandleOverLimit() throws Exception {
+        System.out.println("handleOverLimit");
+        RestEngineImpl instance = new RestEngineImpl(context);
+        JSObject options = (JSObject) new ScriptEngineManager().
+                getEngineByName("js").eval("({contentType: 'application/json', "
+                        + "maxConcurrent: 1, retryAfter: 3})");
+        Deferred deferred = new Deferred();
+        instance.get("/test", options, new JSTestFunction((Object _this,
+                Object... args) -> deferred).getMockInstance());
+        RouteLimiter limiter = instance.getRouteLimiters().get("GET /test");
+        HttpServletRequest request = MockedRequest.create()
+                .withMethod(RestEngine.GET_METHOD)
+                .withMimeType(MediaType.APPLICATION_JSON)
+                .withPath("/test")
+                .withAsyncContext(new MockUp<AsyncContext>() {
+                }.getMockInstance())
+                .build().getMockInstance();
+        MockedResponse response = getTestHandleResponse();
+        instance.handle(request, response.getMockInstance());
+        // the slot is held until the Deferred is settled
+        assertEquals(1, limiter.getActive());
+        try {
+            instance.handle(request, response.getMockInstance());
+            fail();
+        } catch (ServiceUnavailableException ex) {
+            assertEquals("3", ex.getResponse().getHeaderString(
+                    HttpHeaders.RETRY_AFTER));
+        }
+        assertEquals(1, limiter.getRejectedCount());
+        deferred.resolve("test");
+        assertEquals(0, limiter.getActive());
+    }
+
+    @Test
+    public void testHandleSpilledBody() throws Exception {
+        System.out.println("handleSpilledBody");
+        Path dir = Files.createTempDirectory("mocharest-test");
+        try {
+            final String testBody = "{\"test\":\"test\"}";
+            HttpServletRequest request = MockedRequest.create()
+                    .withMethod(RestEngine.POST_METHOD)
+                    .withTestBody(testBody)
+                    .withMimeType(MediaType.APPLICATION_JSON)
+                    .withPath("/test")
+                    .build().getMockInstance();
+            MockedResponse sr = getTestHandleResponse();
+            RestEngineImpl instance = new RestEngineImpl(context);
+            instance.setSpillThreshold(0);
+            instance.setSpillDirectory(dir);
+            Path[] spilled = new Path[1];
+            instance.post("/test", new JSTestFunction((Object _this,
+                    Object... args) -> {
+                MochaRequest req = (MochaRequest) args[0];
+                Object body = req.getBody();
+                spilled[0] = req.getSpillFile();
+                assertTrue(Files.exists(spilled[0]));
+                return body;
+            }).getMockInstance());
+            instance.handle(request, sr.getMockInstance());
+            assertEquals(testBody, new String(sr.bos.toByteArray()));
+            assertEquals(dir, spilled[0].getParent());
+            // deleted once the response is complete
+            assertFalse(Files.exists(spilled[0]));
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testHandleOnRecord() throws Exception {
+        System.out.println("handleOnRecord");
+        HttpServletRequest request = MockedRequest.create()
+                .withMethod(RestEngine.POST_METHOD)
+                .withTestBody("{\"id\":1}\n{\"id\":2}\n")
+                .withMimeType(MediaType.APPLICATION_JSON)
+                .withPath("/test")
+                .build().getMockInstance();
+        MockedResponse sr = getTestHandleResponse();
+        RestEngineImpl instance = new RestEngineImpl(context);
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("js");
+        engine.eval("var ids = [];");
+        instance.post("/test", (JSObject) engine.eval("({contentType: "
+                + "'application/json', stream: 'ndjson', "
+                + "onRecord: function(record, index) { ids.push(record.id); }"
+                + "})"));
+        instance.handle(request, sr.getMockInstance());
+        assertEquals("{\"records\":2}", new String(sr.bos.toByteArray()));
+        assertEquals("1,2", engine.eval("ids.join()"));
+    }
+
+    @Test
+    public void testHandleDeferredRejected() throws MalformedURLException {
+        System.out.println("handleDeferredRejected");
+        Deferred deferred = new Deferred();
+        deferred.reject(new NotFoundException());
+        RestEngineImpl instance = new RestEngineImpl(context);
+        instance.get("/test", new JSTestFunction((Object _this, Object... args) -> deferred).getMockInstance());
+        HttpServletRequest request = MockedRequest.create()
+                .withMethod(RestEngine.GET_METHOD)
+                .withMimeType(MediaType.APPLICATION_JSON)
+                .withPath("/test")
+                .build().getMockInstance();
+        MockedResponse response = getTestHandleResponse();
+        instance.handle(request, response.getMockInstance());
+        assertEquals(404, response.getStatusCode());
+    }
+
+    @Test
+    public void testHandleDeferredTimeout() throws MalformedURLException {
+        System.out.println("handleDeferredTimeout");
+        RestEngineImpl instance = new RestEngineImpl(context);
+        instance.setAsyncTimeout(50);
+        instance.get("/test", new JSTestFunction((Object _this, Object... args) -> new Deferred()).getMockInstance());
+        HttpServletRequest request = MockedRequest.create()
+                .withMethod(RestEngine.GET_METHOD)
+                .withMimeType(MediaType.APPLICATION_JSON)
+                .withPath("/test")
+                .build().getMockInstance();
+        MockedResponse response = getTestHandleResponse();
+        instance.handle(request, response.getMockInstance());
+        assertEquals(503, response.getStatusCode());
+    }
+
     private MockedResponse getTestHandleResponse() {
         return MockedResponse.create().build();
     }
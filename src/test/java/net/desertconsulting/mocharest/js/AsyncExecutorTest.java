@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.js;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.ServiceUnavailableException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class AsyncExecutorTest {
+
+    private static Object await(Deferred deferred) throws
+            InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        Object[] rv = new Object[1];
+        deferred.addListener((resolved, result) -> {
+            rv[0] = result;
+            latch.countDown();
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        return rv[0];
+    }
+
+    @Test
+    public void testSubmit() throws Exception {
+        System.out.println("submit");
+        AsyncExecutor instance = new AsyncExecutor(1, 1);
+        try {
+            Deferred result = instance.submit(() -> Thread.currentThread().
+                    getName());
+            assertTrue(((String) await(result)).startsWith("mocharest-async-"));
+            assertTrue(result.isResolved());
+        } finally {
+            instance.shutdown();
+        }
+    }
+
+    @Test
+    public void testSubmitWithException() throws Exception {
+        System.out.println("submitWithException");
+        AsyncExecutor instance = new AsyncExecutor(1, 1);
+        try {
+            Deferred result = instance.submit(() -> {
+                throw new IllegalStateException("test");
+            });
+            assertEquals("test", ((Exception) await(result)).getMessage());
+            assertTrue(result.isRejected());
+        } finally {
+            instance.shutdown();
+        }
+    }
+
+    @Test
+    public void testSubmitReturningDeferred() throws Exception {
+        System.out.println("submitReturningDeferred");
+        AsyncExecutor instance = new AsyncExecutor(1, 1);
+        try {
+            Deferred inner = new Deferred();
+            Deferred result = instance.submit(() -> inner);
+            inner.reject("test");
+            assertEquals("test", await(result));
+            assertTrue(result.isRejected());
+        } finally {
+            instance.shutdown();
+        }
+    }
+
+    @Test
+    public void testSubmitWhenSaturated() throws Exception {
+        System.out.println("submitWhenSaturated");
+        AsyncExecutor instance = new AsyncExecutor(1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            Deferred running = instance.submit(() -> {
+                started.countDown();
+                return release.await(5, TimeUnit.SECONDS);
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Deferred queued = instance.submit(() -> "queued");
+            Deferred refused = instance.submit(() -> "refused");
+            assertTrue(refused.isRejected());
+            assertTrue(await(refused) instanceof ServiceUnavailableException);
+            assertEquals(1, instance.getRejectedCount());
+            assertEquals(1, instance.getQueued());
+            release.countDown();
+            assertEquals(true, await(running));
+            assertEquals("queued", await(queued));
+        } finally {
+            instance.shutdown();
+        }
+    }
+
+    @Test
+    public void testGetWithoutContext() throws Exception {
+        System.out.println("getWithoutContext");
+        AsyncExecutor instance = AsyncExecutor.get(null);
+        assertEquals(Runtime.getRuntime().availableProcessors(),
+                instance.getThreads());
+        // one executor for all the engines without a context
+        assertSame(instance, AsyncExecutor.get(null));
+        instance.shutdown();
+        assertEquals("test", instance.submit(() -> "test").
+                toCompletableFuture().get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreads() {
+        System.out.println("invalidThreads");
+        new AsyncExecutor(0, 1);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.js;
+
+import java.util.concurrent.TimeUnit;
+import jdk.nashorn.api.scripting.AbstractJSObject;
+import jdk.nashorn.api.scripting.JSObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures building and settling {@link Deferred} chains of growing length,
+ * with handlers returning plain values or already resolved {@link Deferred}s.
+ * Run the main method with the test classpath, the GC profiler reports the
+ * bytes allocated per operation.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeferredChainBenchmark {
+
+    /**
+     * Number of links of the chain.
+     */
+    @Param({"10", "100", "1000", "10000"})
+    int links;
+
+    private final JSObject increment = new Handler(false);
+    private final JSObject deferredIncrement = new Handler(true);
+
+    @Benchmark
+    public Object valueChain() {
+        return chain(increment);
+    }
+
+    @Benchmark
+    public Object deferredChain() {
+        return chain(deferredIncrement);
+    }
+
+    private Object chain(JSObject handler) {
+        Deferred first = new Deferred();
+        Deferred last = first;
+        for (int i = 0; i < links; i++) {
+            last = last.done(handler);
+        }
+        Object[] rv = new Object[1];
+        last.addListener((resolved, result) -> rv[0] = result);
+        first.resolve(0);
+        return rv[0];
+    }
+
+    private static class Handler extends AbstractJSObject {
+
+        private final boolean deferred;
+
+        Handler(boolean deferred) {
+            this.deferred = deferred;
+        }
+
+        @Override
+        public Object call(Object thiz, Object... args) {
+            Integer rv = (Integer) args[0] + 1;
+            if (deferred) {
+                Deferred d = new Deferred();
+                d.resolve(rv);
+                return d;
+            }
+            return rv;
+        }
+
+        @Override
+        public boolean isFunction() {
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DeferredChainBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
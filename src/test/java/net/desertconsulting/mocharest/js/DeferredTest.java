@@ -15,6 +15,16 @@
  */
 package net.desertconsulting.mocharest.js;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import jdk.nashorn.api.scripting.AbstractJSObject;
 import net.desertconsulting.mocharest.JSTestFunction;
 import org.junit.Test;
@@ -75,7 +85,7 @@ public class DeferredTest {
         System.out.println("resolve");
         Object expextedResult = "test";
         Object expextedResult1 = "test1";
-        Object expextedResult2 = "test2";
+        AtomicBoolean called = new AtomicBoolean();
         Deferred instance = new Deferred();
         instance.done(new JSTestFunction((Object _this, Object... args) -> {
             assertEquals(expextedResult, args[0]);
@@ -88,10 +98,12 @@ public class DeferredTest {
             return rv;
         }).getMockInstance())
                 .done(new JSTestFunction((Object _this2, Object... args2) -> {
-                    assertEquals(expextedResult2, args2[0]);
+                    assertEquals(expextedResult1, args2[0]);
+                    called.set(true);
                     return null;
                 }).getMockInstance());
         instance.resolve(expextedResult);
+        assertTrue(called.get());
     }
 
     @Test
@@ -204,4 +216,364 @@ public class DeferredTest {
         instance.always(new AbstractJSObject() {
         });
     }
+
+    @Test
+    public void testListener() {
+        System.out.println("listener");
+        StringBuilder calls = new StringBuilder();
+        Deferred instance = new Deferred();
+        instance.addListener((resolved, result) -> calls.append(resolved).append(result));
+        assertEquals("", calls.toString());
+        instance.resolve("test");
+        instance.addListener((resolved, result) -> calls.append(resolved).append(result));
+        assertEquals("truetesttruetest", calls.toString());
+    }
+
+    @Test
+    public void testListenerWithReject() {
+        System.out.println("listenerWithReject");
+        StringBuilder calls = new StringBuilder();
+        Deferred instance = new Deferred();
+        instance.addListener((resolved, result) -> calls.append(resolved).append(result));
+        instance.reject("test");
+        assertEquals("falsetest", calls.toString());
+    }
+
+    @Test
+    public void testIsResolvedAndIsRejected() {
+        System.out.println("isResolvedAndIsRejected");
+        Deferred resolved = new Deferred();
+        Deferred rejected = new Deferred();
+        assertFalse(resolved.isResolved());
+        assertFalse(resolved.isRejected());
+        resolved.resolve("test");
+        rejected.reject("test");
+        rejected.resolve("test");
+        assertTrue(resolved.isResolved());
+        assertFalse(resolved.isRejected());
+        assertTrue(rejected.isRejected());
+        assertFalse(rejected.isResolved());
+    }
+
+    @Test
+    public void testHandlersOrder() {
+        System.out.println("handlersOrder");
+        List<Integer> calls = new ArrayList<>();
+        Deferred instance = new Deferred();
+        for (int i = 0; i < 10; i++) {
+            int index = i;
+            instance.always(new JSTestFunction((Object _this, Object... args)
+                    -> {
+                calls.add(index);
+                return null;
+            }).getMockInstance());
+        }
+        instance.resolve("test");
+        assertEquals(10, calls.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, (int) calls.get(i));
+        }
+    }
+
+    @Test
+    public void testConcurrentDoneAndResolve() throws Exception {
+        System.out.println("concurrentDoneAndResolve");
+        final int threads = 8;
+        final int handlers = 200;
+        final int rounds = 100;
+        for (int round = 0; round < rounds; round++) {
+            Deferred instance = new Deferred();
+            AtomicInteger calls = new AtomicInteger();
+            CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+            CountDownLatch finished = new CountDownLatch(threads + 1);
+            List<Throwable> errors = new ArrayList<>();
+            AbstractJSObject handler = new AbstractJSObject() {
+                @Override
+                public Object call(Object thiz, Object... args) {
+                    if (!"test".equals(args[0])) {
+                        throw new IllegalStateException();
+                    }
+                    calls.incrementAndGet();
+                    return null;
+                }
+
+                @Override
+                public boolean isFunction() {
+                    return true;
+                }
+            };
+            for (int t = 0; t < threads; t++) {
+                new Thread(() -> {
+                    try {
+                        barrier.await();
+                        for (int i = 0; i < handlers; i++) {
+                            instance.done(handler);
+                        }
+                    } catch (Throwable ex) {
+                        synchronized (errors) {
+                            errors.add(ex);
+                        }
+                    } finally {
+                        finished.countDown();
+                    }
+                }).start();
+            }
+            new Thread(() -> {
+                try {
+                    barrier.await();
+                    instance.resolve("test");
+                } catch (Throwable ex) {
+                    synchronized (errors) {
+                        errors.add(ex);
+                    }
+                } finally {
+                    finished.countDown();
+                }
+            }).start();
+            finished.await();
+            assertTrue(errors.isEmpty());
+            assertEquals(threads * handlers, calls.get());
+        }
+    }
+
+    @Test
+    public void testLongChain() {
+        System.out.println("longChain");
+        final int links = 100000;
+        AbstractJSObject increment = new AbstractJSObject() {
+            @Override
+            public Object call(Object thiz, Object... args) {
+                return (Integer) args[0] + 1;
+            }
+
+            @Override
+            public boolean isFunction() {
+                return true;
+            }
+        };
+        Deferred instance = new Deferred();
+        Deferred last = instance;
+        for (int i = 0; i < links; i++) {
+            last = last.done(increment);
+        }
+        Object[] result = new Object[1];
+        last.addListener((resolved, value) -> result[0] = value);
+        instance.resolve(0);
+        assertEquals(links, result[0]);
+    }
+
+    @Test
+    public void testLongChainOfReturnedDeferreds() {
+        System.out.println("longChainOfReturnedDeferreds");
+        final int links = 100000;
+        List<Deferred> pending = new ArrayList<>();
+        AbstractJSObject defer = new AbstractJSObject() {
+            @Override
+            public Object call(Object thiz, Object... args) {
+                Deferred rv = new Deferred();
+                pending.add(rv);
+                return rv;
+            }
+
+            @Override
+            public boolean isFunction() {
+                return true;
+            }
+        };
+        Deferred instance = new Deferred();
+        Deferred last = instance;
+        for (int i = 0; i < links; i++) {
+            last = last.done(defer);
+        }
+        Object[] result = new Object[1];
+        last.addListener((resolved, value) -> result[0] = value);
+        instance.resolve("test");
+        for (int i = 0; i < links; i++) {
+            // every returned Deferred settles the next link of the chain
+            pending.get(i).resolve(i);
+        }
+        assertEquals(links - 1, result[0]);
+    }
+
+    @Test
+    public void testDoneInsideHandler() {
+        System.out.println("doneInsideHandler");
+        List<String> calls = new ArrayList<>();
+        Deferred instance = new Deferred();
+        instance.done(new JSTestFunction((Object _this, Object... args) -> {
+            calls.add("first");
+            ((Deferred) _this).done(new JSTestFunction((Object _this1,
+                    Object... args1) -> {
+                calls.add("nested");
+                return null;
+            }).getMockInstance());
+            return null;
+        }).getMockInstance());
+        instance.done(new JSTestFunction((Object _this, Object... args) -> {
+            calls.add("second");
+            return null;
+        }).getMockInstance());
+        instance.resolve("test");
+        assertEquals(Arrays.asList("first", "second", "nested"), calls);
+    }
+
+    @Test
+    public void testAll() {
+        System.out.println("all");
+        Deferred first = new Deferred();
+        Deferred second = new Deferred();
+        Deferred instance = Deferred.all(first, "plain", second);
+        Object[] result = new Object[1];
+        instance.addListener((resolved, value) -> result[0] = value);
+        second.resolve(2);
+        assertFalse(instance.isResolved());
+        first.resolve(1);
+        assertTrue(instance.isResolved());
+        assertArrayEquals(new Object[]{1, "plain", 2}, (Object[]) result[0]);
+    }
+
+    @Test
+    public void testAllWithReject() {
+        System.out.println("allWithReject");
+        Deferred first = new Deferred();
+        Deferred second = new Deferred();
+        Deferred instance = Deferred.when(first, second);
+        Object[] result = new Object[1];
+        instance.addListener((resolved, value) -> result[0] = value);
+        second.reject("error");
+        first.resolve(1);
+        assertTrue(instance.isRejected());
+        assertEquals("error", result[0]);
+    }
+
+    @Test
+    public void testAllWithoutValues() {
+        System.out.println("allWithoutValues");
+        Deferred instance = Deferred.all();
+        assertTrue(instance.isResolved());
+    }
+
+    @Test
+    public void testAny() {
+        System.out.println("any");
+        Deferred first = new Deferred();
+        Deferred second = new Deferred();
+        Deferred instance = Deferred.any(first, second);
+        Object[] result = new Object[1];
+        instance.addListener((resolved, value) -> result[0] = value);
+        first.reject("error");
+        assertFalse(instance.isResolved());
+        second.resolve(2);
+        assertTrue(instance.isResolved());
+        assertEquals(2, result[0]);
+    }
+
+    @Test
+    public void testAnyWithAllRejected() {
+        System.out.println("anyWithAllRejected");
+        Deferred first = new Deferred();
+        Deferred second = new Deferred();
+        Deferred instance = Deferred.any(first, second);
+        Object[] result = new Object[1];
+        instance.addListener((resolved, value) -> result[0] = value);
+        second.reject("error2");
+        first.reject("error1");
+        assertTrue(instance.isRejected());
+        assertArrayEquals(new Object[]{"error1", "error2"},
+                (Object[]) result[0]);
+    }
+
+    @Test
+    public void testRace() {
+        System.out.println("race");
+        Deferred first = new Deferred();
+        Deferred second = new Deferred();
+        Deferred instance = Deferred.race(first, second);
+        second.reject("error");
+        first.resolve(1);
+        assertTrue(instance.isRejected());
+        assertFalse(Deferred.race().isResolved());
+    }
+
+    @Test
+    public void testFrom() {
+        System.out.println("from");
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Deferred instance = Deferred.from(future);
+        Object[] result = new Object[1];
+        instance.addListener((resolved, value) -> result[0] = value);
+        assertFalse(instance.isResolved());
+        future.complete("test");
+        assertTrue(instance.isResolved());
+        assertEquals("test", result[0]);
+    }
+
+    @Test
+    public void testFromFailed() {
+        System.out.println("fromFailed");
+        IllegalStateException expected = new IllegalStateException("test");
+        CompletableFuture<Object> future = CompletableFuture.supplyAsync(
+                () -> {
+                    throw expected;
+                });
+        Object[] result = new Object[1];
+        CountDownLatch latch = new CountDownLatch(1);
+        Deferred.from(future.thenApply(value -> value)).addListener(
+                (resolved, value) -> {
+                    result[0] = resolved ? null : value;
+                    latch.countDown();
+                });
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException ex) {
+            fail();
+        }
+        assertSame(expected, result[0]);
+    }
+
+    @Test
+    public void testToCompletableFuture() throws Exception {
+        System.out.println("toCompletableFuture");
+        Deferred instance = new Deferred();
+        CompletableFuture<Object> future = instance.toCompletableFuture();
+        assertFalse(future.isDone());
+        instance.resolve("test");
+        assertEquals("test", future.get());
+    }
+
+    @Test
+    public void testToCompletableFutureWithReject() throws Exception {
+        System.out.println("toCompletableFutureWithReject");
+        Deferred instance = new Deferred();
+        CompletableFuture<Object> future = instance.toCompletableFuture();
+        instance.reject("test");
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException ex) {
+            assertEquals("test", ((Deferred.RejectedException) ex.getCause()).
+                    getReason());
+        }
+        IllegalStateException expected = new IllegalStateException();
+        Deferred rejected = new Deferred();
+        rejected.reject(expected);
+        assertTrue(rejected.toCompletableFuture().isCompletedExceptionally());
+        rejected.toCompletableFuture().whenComplete((value, ex)
+                -> assertSame(expected, ex));
+    }
+
+    @Test
+    public void testDoneReturningCompletionStage() {
+        System.out.println("doneReturningCompletionStage");
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Deferred instance = new Deferred();
+        Object[] result = new Object[1];
+        instance.done(new JSTestFunction((Object _this, Object... args)
+                -> future).getMockInstance()).addListener((resolved, value)
+                -> result[0] = value);
+        instance.resolve("test");
+        assertNull(result[0]);
+        future.complete("test1");
+        assertEquals("test1", result[0]);
+    }
 }
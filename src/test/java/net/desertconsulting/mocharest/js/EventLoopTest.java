@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.js;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class EventLoopTest {
+
+    @Test
+    public void testExecuteSerially() throws Exception {
+        System.out.println("executeSerially");
+        final int threads = 4;
+        final int tasks = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            EventLoop instance = new EventLoop(executor, new ReentrantLock());
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger overlaps = new AtomicInteger();
+            List<Integer>[] order = new List[threads];
+            CountDownLatch done = new CountDownLatch(threads * tasks);
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                order[t] = new ArrayList<>();
+                new Thread(() -> {
+                    for (int i = 0; i < tasks; i++) {
+                        int task = i;
+                        instance.execute(() -> {
+                            if (running.incrementAndGet() > 1) {
+                                overlaps.incrementAndGet();
+                            }
+                            // only touched by the loop, one task at a time
+                            order[thread].add(task);
+                            running.decrementAndGet();
+                            done.countDown();
+                        });
+                    }
+                }).start();
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(0, overlaps.get());
+            for (int t = 0; t < threads; t++) {
+                assertEquals(tasks, order[t].size());
+                for (int i = 0; i < tasks; i++) {
+                    assertEquals(i, (int) order[t].get(i));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testExecuteAfterException() throws Exception {
+        System.out.println("executeAfterException");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            EventLoop instance = new EventLoop(executor, new ReentrantLock());
+            CountDownLatch done = new CountDownLatch(1);
+            instance.execute(() -> {
+                throw new IllegalStateException("test");
+            });
+            instance.execute(done::countDown);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testExecuteHoldingLock() throws Exception {
+        System.out.println("executeHoldingLock");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ReentrantLock lock = new ReentrantLock();
+            EventLoop instance = new EventLoop(executor, lock);
+            CountDownLatch done = new CountDownLatch(1);
+            boolean[] held = new boolean[1];
+            lock.lock();
+            try {
+                instance.execute(() -> {
+                    held[0] = lock.isHeldByCurrentThread();
+                    done.countDown();
+                });
+                // the task waits for the lock
+                assertFalse(done.await(50, TimeUnit.MILLISECONDS));
+            } finally {
+                lock.unlock();
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertTrue(held[0]);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
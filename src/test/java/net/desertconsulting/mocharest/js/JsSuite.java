@@ -23,6 +23,6 @@ import org.junit.runners.Suite;
  * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({net.desertconsulting.mocharest.js.MochaJsEngineTest.class, net.desertconsulting.mocharest.js.DeferredTest.class})
+@Suite.SuiteClasses({net.desertconsulting.mocharest.js.MochaJsEngineTest.class, net.desertconsulting.mocharest.js.DeferredTest.class, net.desertconsulting.mocharest.js.MochaJsEnginePoolTest.class, net.desertconsulting.mocharest.js.ModuleCacheTest.class, net.desertconsulting.mocharest.js.AsyncExecutorTest.class, net.desertconsulting.mocharest.js.EventLoopTest.class, net.desertconsulting.mocharest.js.TimerServiceTest.class})
 public class JsSuite {
 }
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.js;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.core.MediaType;
+import net.desertconsulting.mocharest.RestEngine;
+import net.desertconsulting.mocharest.RestEngineImpl;
+import net.desertconsulting.mocharest.request.RouteCache;
+import net.desertconsulting.mocharest.request.RouteLimiter;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class MochaJsEnginePoolTest {
+
+    private final static String SCRIPT
+            = "var current;\n"
+            + "$mr.get('/test', function (request, response, parameters) {\n"
+            + "    current = parameters['id'];\n"
+            + "    java.lang.Thread.sleep(2);\n"
+            + "    return {id: current};\n"
+            + "});";
+
+    @Test
+    public void testHandleDoesNotShareGlobals() throws Exception {
+        System.out.println("handleDoesNotShareGlobals");
+        int threads = 4;
+        int requests = 100;
+        MochaJsEnginePool instance = new MochaJsEnginePool(null, threads,
+                SCRIPT);
+
+        List<HttpServletRequest> reqs = new ArrayList<>();
+        List<ByteArrayOutputStream> bodies = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            reqs.add(request("/test", "id", String.valueOf(i)));
+            bodies.add(new ByteArrayOutputStream());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                HttpServletRequest req = reqs.get(i);
+                HttpServletResponse resp = response(bodies.get(i));
+                futures.add(executor.submit(() -> instance.handle(req, resp)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int i = 0; i < requests; i++) {
+            assertEquals("{\"id\":\"" + i + "\"}", bodies.get(i).toString());
+        }
+        assertEquals(requests, instance.getAcquireCount());
+        assertEquals(threads, instance.getAvailable());
+        assertTrue(instance.getWaitCount() <= requests);
+        assertTrue(instance.getTotalWaitNanos() >= instance.getMaxWaitNanos());
+    }
+
+    @Test
+    public void testEnginesAreIndependent() throws Exception {
+        System.out.println("enginesAreIndependent");
+        MochaJsEnginePool instance = new MochaJsEnginePool(null, 2, SCRIPT);
+        MochaJsEngine[] engines = instance.getEngines();
+        assertEquals(2, instance.getSize());
+        assertNotSame(engines[0].getRestEngine(), engines[1].getRestEngine());
+        engines[0].eval(new StringReader("current = 'a';"));
+        assertNull(engines[1].eval(new StringReader("current")));
+    }
+
+    @Test
+    public void testHandleHoldsEngineUntilComplete() throws Exception {
+        System.out.println("handleHoldsEngineUntilComplete");
+        MochaJsEnginePool instance = new MochaJsEnginePool(null, 1,
+                "var pending;\n"
+                + "$mr.get('/deferred', function () {\n"
+                + "    return pending = new Deferred();\n"
+                + "});\n"
+                + "$mr.get('/error', function () { throw 'error'; });");
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        instance.handle(asyncRequest("/deferred"), response(body));
+        // the handler has returned, its Deferred hasn't been settled yet
+        assertEquals(0, instance.getAvailable());
+        instance.getEngines()[0].eval(new StringReader(
+                "pending.resolve({done: true})"));
+        assertEquals(1, instance.getAvailable());
+        assertEquals("{\"done\":true}", body.toString());
+
+        try {
+            instance.handle(asyncRequest("/error"), response(
+                    new ByteArrayOutputStream()));
+            fail();
+        } catch (RuntimeException ex) {
+        }
+        assertEquals(1, instance.getAvailable());
+    }
+
+    @Test
+    public void testEnginesShareRouteLimiters() throws Exception {
+        System.out.println("enginesShareRouteLimiters");
+        MochaJsEnginePool instance = new MochaJsEnginePool(null, 2,
+                "$mr.get('/test', {contentType: 'application/json', "
+                + "maxConcurrent: 1}, function () {\n"
+                + "    return 1;\n"
+                + "});");
+        MochaJsEngine[] engines = instance.getEngines();
+        RouteLimiter limiter = ((RestEngineImpl) engines[0].getRestEngine()).
+                getRouteLimiters().get("GET /test");
+        assertNotNull(limiter);
+        assertSame(limiter, ((RestEngineImpl) engines[1].getRestEngine()).
+                getRouteLimiters().get("GET /test"));
+    }
+
+    @Test
+    public void testHandleLimitedRoutesOnce() throws Exception {
+        System.out.println("handleLimitedRoutesOnce");
+        MochaJsEnginePool instance = new MochaJsEnginePool(null, 2,
+                "$mr.get('/items/{id:int}', {contentType: 'application/json', "
+                + "maxConcurrent: 1}, function (request, response, "
+                + "parameters, pathParameters) {\n"
+                + "    return {id: pathParameters['id']};\n"
+                + "});");
+        MochaJsEngine[] engines = instance.getEngines();
+        for (MochaJsEngine engine : engines) {
+            ((RestEngineImpl) engine.getRestEngine()).setRouteCacheSize(16);
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        instance.handle(request("/items/5", "id", "1"), response(body));
+        assertEquals("{\"id\":5}", body.toString());
+        // only the lookup finding the limiter, the borrowed engine reuses it
+        long lookups = 0;
+        for (MochaJsEngine engine : engines) {
+            RouteCache cache = ((RestEngineImpl) engine.getRestEngine()).
+                    getRouteCache();
+            lookups += cache.getHitCount() + cache.getMissCount();
+        }
+        assertEquals(1, lookups);
+    }
+
+    @Test
+    public void testHandleOverLimitDoesNotBorrowEngine() throws Exception {
+        System.out.println("handleOverLimitDoesNotBorrowEngine");
+        MochaJsEnginePool instance = new MochaJsEnginePool(null, 1,
+                "var pending;\n"
+                + "$mr.get('/deferred', {contentType: 'application/json', "
+                + "maxConcurrent: 1, retryAfter: 2}, function () {\n"
+                + "    return pending = new Deferred();\n"
+                + "});");
+        RouteLimiter limiter = ((RestEngineImpl) instance.getEngines()[0].
+                getRestEngine()).getRouteLimiters().get("GET /deferred");
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        instance.handle(asyncRequest("/deferred"), response(body));
+        assertEquals(1, limiter.getActive());
+        assertEquals(0, instance.getAvailable());
+        // rejected right away, instead of waiting for the only engine
+        try {
+            instance.handle(asyncRequest("/deferred"), response(
+                    new ByteArrayOutputStream()));
+            fail();
+        } catch (ServiceUnavailableException ex) {
+        }
+        assertEquals(1, instance.getAcquireCount());
+        assertEquals(1, limiter.getRejectedCount());
+        instance.getEngines()[0].eval(new StringReader(
+                "pending.resolve({done: true})"));
+        assertEquals(0, limiter.getActive());
+        assertEquals(1, instance.getAvailable());
+        assertEquals(1, limiter.getAcceptedCount());
+    }
+
+    @Test
+    public void testDrain() throws Exception {
+        System.out.println("drain");
+        MochaJsEnginePool instance = new MochaJsEnginePool(null, 2,
+                "var pending;\n"
+                + "$mr.get('/deferred', function () {\n"
+                + "    return pending = new Deferred();\n"
+                + "});");
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        instance.handle(asyncRequest("/deferred"), response(body));
+        assertFalse(instance.drain(10));
+        MochaJsEngine busy = instance.getEngines()[0].getInFlight() > 0
+                ? instance.getEngines()[0] : instance.getEngines()[1];
+        busy.eval(new StringReader("pending.resolve({done: true})"));
+        assertTrue(instance.drain(0));
+        assertEquals("{\"done\":true}", body.toString());
+    }
+
+    @Test
+    public void testTimersDontOverlapRequests() throws Exception {
+        System.out.println("timersDontOverlapRequests");
+        MochaJsEnginePool instance = new MochaJsEnginePool(null, 1,
+                "var running = false, overlaps = 0, ticks = 0;\n"
+                + "setInterval(function () {\n"
+                + "    ticks++;\n"
+                + "    if (running) { overlaps++; }\n"
+                + "}, 1);\n"
+                + "$mr.get('/busy', function () {\n"
+                + "    running = true;\n"
+                + "    var start = ticks;\n"
+                + "    java.lang.Thread.sleep(50);\n"
+                + "    running = false;\n"
+                + "    return {ticks: ticks - start};\n"
+                + "});\n"
+                + "$mr.get('/timer', function () {\n"
+                + "    var rv = new Deferred();\n"
+                + "    setTimeout(function () { rv.resolve({late: true}); }, 10);\n"
+                + "    return rv;\n"
+                + "});");
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            instance.handle(request("/busy", "a", "b"), response(body));
+            assertEquals("{\"ticks\":0}", body.toString());
+            // the lock is released while waiting for the deferred
+            body = new ByteArrayOutputStream();
+            instance.handle(request("/timer", "a", "b"), response(body));
+            assertEquals("{\"late\":true}", body.toString());
+            assertEquals(0, ((Number) instance.getEngines()[0].eval(
+                    new StringReader("overlaps"))).intValue());
+        } finally {
+            instance.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() throws Exception {
+        System.out.println("invalidSize");
+        new MochaJsEnginePool(null, 0, SCRIPT);
+    }
+
+    /**
+     * Mocked requests can't be created more than once per test, plain proxies
+     * are used instead.
+     */
+    private static HttpServletRequest request(String path, String name,
+            String value) {
+        Map<String, String[]> parameters = Collections.singletonMap(name,
+                new String[]{value});
+        return (HttpServletRequest) Proxy.newProxyInstance(
+                HttpServletRequest.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMethod":
+                            return RestEngine.GET_METHOD;
+                        case "getPathInfo":
+                            return path;
+                        case "getContentType":
+                            return MediaType.APPLICATION_JSON;
+                        case "getParameterMap":
+                            return parameters;
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    /**
+     * A GET request supporting asynchronous processing.
+     */
+    private static HttpServletRequest asyncRequest(String path) {
+        AsyncContext async = (AsyncContext) Proxy.newProxyInstance(
+                AsyncContext.class.getClassLoader(),
+                new Class<?>[]{AsyncContext.class},
+                (proxy, method, args) -> defaultValue(method.getReturnType()));
+        return (HttpServletRequest) Proxy.newProxyInstance(
+                HttpServletRequest.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMethod":
+                            return RestEngine.GET_METHOD;
+                        case "getPathInfo":
+                            return path;
+                        case "getContentType":
+                            return MediaType.APPLICATION_JSON;
+                        case "getParameterMap":
+                            return Collections.emptyMap();
+                        case "isAsyncSupported":
+                            return true;
+                        case "startAsync":
+                            return async;
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    private static HttpServletResponse response(ByteArrayOutputStream bos) {
+        ServletOutputStream stream = new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                bos.write(b);
+            }
+        };
+        return (HttpServletResponse) Proxy.newProxyInstance(
+                HttpServletResponse.class.getClassLoader(),
+                new Class<?>[]{HttpServletResponse.class},
+                (proxy, method, args) -> "getOutputStream".equals(method.
+                        getName()) ? stream : defaultValue(method.
+                                getReturnType()));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
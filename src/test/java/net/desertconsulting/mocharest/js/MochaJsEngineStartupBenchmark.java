@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.js;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import javax.script.ScriptException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the time needed to initialize a {@link MochaJsEngine} running a
+ * synthetic application, without code cache and with a cold or a warm
+ * persistent code cache. Run the main method with the test classpath.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MochaJsEngineStartupBenchmark {
+
+    private final static String[] CACHE_OPTIONS = new String[]{
+        "--persistent-code-cache", "--optimistic-types=true"};
+
+    @Param({"200"})
+    int handlers;
+
+    String script;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < handlers; i++) {
+            sb.append("function validate").append(i).append("(value) {\n")
+                    .append("    var rv = [];\n")
+                    .append("    for (var i = 0; i < value.length; i++) {\n")
+                    .append("        rv.push(value.charCodeAt(i) * ").append(i)
+                    .append(");\n")
+                    .append("    }\n")
+                    .append("    return rv.join('-');\n")
+                    .append("}\n")
+                    .append("$mr.get('/items").append(i)
+                    .append("/{id:int}', function (request, response, ")
+                    .append("parameters, pathParameters) {\n")
+                    .append("    return {id: pathParameters['id'], check: ")
+                    .append("validate").append(i).append("('item' + ")
+                    .append("pathParameters['id'])};\n")
+                    .append("});\n");
+        }
+        script = sb.toString();
+    }
+
+    @State(Scope.Benchmark)
+    public static class ColdCache {
+
+        Path dir;
+
+        @Setup(Level.Invocation)
+        public void setUp() throws Exception {
+            dir = Files.createTempDirectory("mocharest-cold");
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class WarmCache {
+
+        Path dir;
+
+        @Setup(Level.Trial)
+        public void setUp(MochaJsEngineStartupBenchmark benchmark) throws
+                Exception {
+            dir = Files.createTempDirectory("mocharest-warm");
+            System.setProperty(MochaJsEngine.CODE_CACHE_DIR_PROPERTY, dir.
+                    toString());
+            benchmark.init(CACHE_OPTIONS);
+        }
+    }
+
+    @Benchmark
+    public Object noCache() throws ScriptException {
+        return init();
+    }
+
+    @Benchmark
+    public Object coldCache(ColdCache cache) throws ScriptException {
+        System.setProperty(MochaJsEngine.CODE_CACHE_DIR_PROPERTY, cache.dir.
+                toString());
+        return init(CACHE_OPTIONS);
+    }
+
+    @Benchmark
+    public Object warmCache(WarmCache cache) throws ScriptException {
+        System.setProperty(MochaJsEngine.CODE_CACHE_DIR_PROPERTY, cache.dir.
+                toString());
+        return init(CACHE_OPTIONS);
+    }
+
+    MochaJsEngine init(String... options) throws ScriptException {
+        MochaJsEngine engine = new MochaJsEngine(null, new ModuleCache(),
+                options);
+        engine.eval(new StringReader(script));
+        return engine;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MochaJsEngineStartupBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
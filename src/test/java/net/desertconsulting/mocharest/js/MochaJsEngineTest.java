@@ -16,8 +16,24 @@
 package net.desertconsulting.mocharest.js;
 
 import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MediaType;
+import mockit.Expectations;
+import mockit.Mock;
+import mockit.MockUp;
+import mockit.Mocked;
+import net.desertconsulting.mocharest.MockedRequest;
+import net.desertconsulting.mocharest.MockedResponse;
+import net.desertconsulting.mocharest.RestEngine;
+import net.desertconsulting.mocharest.RestEngineImpl;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -49,6 +65,295 @@ public class MochaJsEngineTest {
     @After
     public void tearDown() {
     }
+
+    @Test
+    public void testGetEngineOptions(@Mocked final ServletContext context) throws Exception {
+        System.out.println("getEngineOptions");
+        String property = System.getProperty(MochaJsEngine.CODE_CACHE_DIR_PROPERTY);
+        new Expectations() {
+            {
+                context.getInitParameter(MochaJsEngine.ENGINE_OPTIONS_PARAM);
+                returns(" --optimistic-types=true  --lazy-compilation=false ");
+
+                context.getInitParameter(MochaJsEngine.CODE_CACHE_DIR_PARAM);
+                returns("/tmp/mocharest-cache");
+            }
+        };
+        try {
+            System.clearProperty(MochaJsEngine.CODE_CACHE_DIR_PROPERTY);
+            assertArrayEquals(new String[]{"--optimistic-types=true",
+                "--lazy-compilation=false", "--persistent-code-cache"},
+                    MochaJsEngine.getEngineOptions(context));
+            // reading the options has no JVM-wide side effect
+            assertNull(System.getProperty(
+                    MochaJsEngine.CODE_CACHE_DIR_PROPERTY));
+        } finally {
+            if (property == null) {
+                System.clearProperty(MochaJsEngine.CODE_CACHE_DIR_PROPERTY);
+            } else {
+                System.setProperty(MochaJsEngine.CODE_CACHE_DIR_PROPERTY, property);
+            }
+        }
+    }
+
+    @Test
+    public void testInitCodeCache(@Mocked final ServletContext context)
+            throws Exception {
+        System.out.println("initCodeCache");
+        String property = System.getProperty(MochaJsEngine.CODE_CACHE_DIR_PROPERTY);
+        new Expectations() {
+            {
+                context.getInitParameter(MochaJsEngine.CODE_CACHE_DIR_PARAM);
+                returns(" /tmp/mocharest-cache ");
+            }
+        };
+        try {
+            System.clearProperty(MochaJsEngine.CODE_CACHE_DIR_PROPERTY);
+            assertTrue(MochaJsEngine.initCodeCache(context));
+            assertEquals("/tmp/mocharest-cache", System.getProperty(
+                    MochaJsEngine.CODE_CACHE_DIR_PROPERTY));
+            // a value already set is kept
+            System.setProperty(MochaJsEngine.CODE_CACHE_DIR_PROPERTY,
+                    "/tmp/other-cache");
+            assertFalse(MochaJsEngine.initCodeCache(context));
+            assertEquals("/tmp/other-cache", System.getProperty(
+                    MochaJsEngine.CODE_CACHE_DIR_PROPERTY));
+            assertFalse(MochaJsEngine.initCodeCache(null));
+        } finally {
+            if (property == null) {
+                System.clearProperty(MochaJsEngine.CODE_CACHE_DIR_PROPERTY);
+            } else {
+                System.setProperty(MochaJsEngine.CODE_CACHE_DIR_PROPERTY, property);
+            }
+        }
+    }
+
+    @Test
+    public void testHandleWithNativeBody() throws Exception {
+        System.out.println("handleWithNativeBody");
+        MochaJsEngine instance = new MochaJsEngine(null);
+        instance.eval(new StringReader("$mr.post('/test', "
+                + "{contentType: 'application/json', nativeBody: true}, "
+                + "function (request) {\n"
+                + "    var body = request.getBody();\n"
+                + "    return {native: Array.isArray(body.items), "
+                + "count: body.items.length, name: body.items[1].name};\n"
+                + "});"));
+        HttpServletRequest request = MockedRequest.create()
+                .withMethod(RestEngine.POST_METHOD)
+                .withPath("/test")
+                .withMimeType(MediaType.APPLICATION_JSON)
+                .withTestBody("{\"items\": [{\"name\": \"a\"}, {\"name\": \"b\"}]}")
+                .build().getMockInstance();
+        MockedResponse response = MockedResponse.create().build();
+        instance.handle(request, response.getMockInstance());
+        assertEquals("{\"native\":true,\"count\":2,\"name\":\"b\"}",
+                response.bos.toString());
+    }
+
+    @Test
+    public void testHandleWithAsync() throws Exception {
+        System.out.println("handleWithAsync");
+        MochaJsEngine instance = new MochaJsEngine(null);
+        ((RestEngineImpl) instance.getRestEngine()).setAsyncExecutor(
+                new AsyncExecutor(3, 10));
+        // each source completes only if the three run at the same time
+        instance.eval(new StringReader("var barrier = "
+                + "new java.util.concurrent.CyclicBarrier(3);\n"
+                + "function source(value) {\n"
+                + "    return $mr.async(function () {\n"
+                + "        barrier.await(5, java.util.concurrent.TimeUnit.SECONDS);\n"
+                + "        return value;\n"
+                + "    });\n"
+                + "}\n"
+                + "$mr.get('/test', {contentType: 'application/json'}, "
+                + "function (request) {\n"
+                + "    return Deferred.all(source(1), source(2), source(3))"
+                + ".done(function (r) { return {sum: r[0] + r[1] + r[2]}; });\n"
+                + "});"));
+        HttpServletRequest request = MockedRequest.create()
+                .withMethod(RestEngine.GET_METHOD)
+                .withPath("/test")
+                .build().getMockInstance();
+        MockedResponse response = MockedResponse.create().build();
+        instance.handle(request, response.getMockInstance());
+        assertEquals("{\"sum\":6}", response.bos.toString());
+    }
+
+    @Test
+    public void testSetTimeout() throws Exception {
+        System.out.println("setTimeout");
+        MochaJsEngine instance = new MochaJsEngine(null);
+        CountDownLatch latch = (CountDownLatch) instance.eval(new StringReader(
+                "var latch = new java.util.concurrent.CountDownLatch(1);\n"
+                + "var calls = [];\n"
+                + "var cleared = setTimeout(function () { calls.push('cleared'); }, 100);\n"
+                + "setTimeout(function (a, b) { calls.push(a + b); }, 20, 'a', 'b');\n"
+                + "var thread;\n"
+                + "setTimeout(function () {\n"
+                + "    calls.push('last');\n"
+                + "    thread = String(java.lang.Thread.currentThread().getName());\n"
+                + "    latch.countDown();\n"
+                + "}, 200);\n"
+                + "clearTimeout(cleared);\n"
+                + "latch;"));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals("ab,last", instance.eval(new StringReader(
+                "calls.join()")));
+        // callbacks don't run on the scheduler's threads
+        assertTrue(((String) instance.eval(new StringReader("thread"))).
+                startsWith("mocharest-loop-"));
+        assertEquals(0, instance.getPendingTimers());
+    }
+
+    @Test
+    public void testSetInterval() throws Exception {
+        System.out.println("setInterval");
+        MochaJsEngine instance = new MochaJsEngine(null);
+        CountDownLatch latch = (CountDownLatch) instance.eval(new StringReader(
+                "var latch = new java.util.concurrent.CountDownLatch(1);\n"
+                + "var count = 0;\n"
+                + "var id = setInterval(function () {\n"
+                + "    if (++count === 3) {\n"
+                + "        clearInterval(id);\n"
+                + "        latch.countDown();\n"
+                + "    }\n"
+                + "}, 5);\n"
+                + "latch;"));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(3, ((Number) instance.eval(new StringReader("count"))).
+                intValue());
+        assertEquals(0, instance.getPendingTimers());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        System.out.println("close");
+        MochaJsEngine instance = new MochaJsEngine(null);
+        CountDownLatch latch = (CountDownLatch) instance.eval(new StringReader(
+                "var latch = new java.util.concurrent.CountDownLatch(1);\n"
+                + "var count = 0;\n"
+                + "setInterval(function () { count++; latch.countDown(); }, 1);\n"
+                + "setTimeout(function () { count = -1; }, 100000);\n"
+                + "latch;"));
+        assertEquals(2, instance.getPendingTimers());
+        // the callback has run once, it's compiled
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        instance.close();
+        assertEquals(0, instance.getPendingTimers());
+        // the loop is serial: ticks posted before close run before the
+        // marker, and a cancelled interval doesn't call its callback
+        CountDownLatch marker = (CountDownLatch) instance.eval(new StringReader(
+                "var after, marker = new java.util.concurrent.CountDownLatch(1);\n"
+                + "setTimeout(function () { after = count; marker.countDown(); }, 0);\n"
+                + "marker;"));
+        assertTrue(marker.await(5, TimeUnit.SECONDS));
+        Object after = instance.eval(new StringReader("after"));
+        assertTrue(((Number) after).intValue() > 0);
+        assertEquals(after, instance.eval(new StringReader("count")));
+    }
+
+    @Test
+    public void testDrain() throws Exception {
+        System.out.println("drain");
+        CountDownLatch completed = new CountDownLatch(1);
+        AsyncContext async = new MockUp<AsyncContext>() {
+            @Mock
+            public void complete() {
+                completed.countDown();
+            }
+        }.getMockInstance();
+        MochaJsEngine instance = new MochaJsEngine(null);
+        instance.eval(new StringReader("var ticks = 0;\n"
+                + "setInterval(function () { ticks++; }, 1);\n"
+                + "$mr.get('/test', "
+                + "{contentType: 'application/json'}, function (request) {\n"
+                + "    var rv = new Deferred();\n"
+                + "    setTimeout(function () { rv.resolve({late: true}); }, 50);\n"
+                + "    return rv;\n"
+                + "});"));
+        HttpServletRequest request = MockedRequest.create()
+                .withMethod(RestEngine.GET_METHOD)
+                .withPath("/test")
+                .withAsyncContext(async)
+                .build().getMockInstance();
+        MockedResponse response = MockedResponse.create().build();
+        instance.handle(request, response.getMockInstance());
+        assertEquals(1, instance.getInFlight());
+        // the interval isn't waited for
+        assertTrue(instance.drain(5000));
+        assertEquals(0, completed.getCount());
+        assertEquals(0, instance.getInFlight());
+        assertEquals("{\"late\":true}", response.bos.toString());
+        assertEquals(1, instance.getPendingTimers());
+
+        instance.eval(new StringReader("setTimeout(function () {}, 100000);"));
+        assertFalse(instance.drain(10));
+        instance.close();
+        assertTrue(instance.drain(0));
+    }
+
+    @Test
+    public void testHandleWithSetTimeout() throws Exception {
+        System.out.println("handleWithSetTimeout");
+        CountDownLatch completed = new CountDownLatch(1);
+        AsyncContext async = new MockUp<AsyncContext>() {
+            @Mock
+            public void complete() {
+                completed.countDown();
+            }
+        }.getMockInstance();
+        MochaJsEngine instance = new MochaJsEngine(null);
+        instance.eval(new StringReader("$mr.get('/test', "
+                + "{contentType: 'application/json'}, function (request) {\n"
+                + "    var rv = new Deferred();\n"
+                + "    setTimeout(function () { rv.resolve({late: true}); }, 50);\n"
+                + "    return rv;\n"
+                + "});"));
+        HttpServletRequest request = MockedRequest.create()
+                .withMethod(RestEngine.GET_METHOD)
+                .withPath("/test")
+                .withAsyncContext(async)
+                .build().getMockInstance();
+        MockedResponse response = MockedResponse.create().build();
+        instance.handle(request, response.getMockInstance());
+        // the request thread is released before the timer fires
+        assertEquals(1, completed.getCount());
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertEquals("{\"late\":true}", response.bos.toString());
+    }
+
+    @Test
+    public void testGetEngineOptionsWithoutContext() {
+        System.out.println("getEngineOptionsWithoutContext");
+        assertEquals(0, MochaJsEngine.getEngineOptions(null).length);
+    }
+
+    @Test
+    public void testEvalWithPersistentCodeCache() throws Exception {
+        System.out.println("evalWithPersistentCodeCache");
+        String property = System.getProperty(MochaJsEngine.CODE_CACHE_DIR_PROPERTY);
+        Path dir = Files.createTempDirectory("mocharest-cache");
+        System.setProperty(MochaJsEngine.CODE_CACHE_DIR_PROPERTY, dir.toString());
+        try {
+            for (int i = 0; i < 2; i++) {
+                MochaJsEngine instance = new MochaJsEngine(null,
+                        new ModuleCache(), "--persistent-code-cache",
+                        "--optimistic-types=true");
+                assertEquals(3, ((Number) instance.eval(new StringReader(
+                        "function add(a, b) { return a + b; } add(1, 2);"))).
+                        intValue());
+            }
+            assertTrue(Files.list(dir).findAny().isPresent());
+        } finally {
+            if (property == null) {
+                System.clearProperty(MochaJsEngine.CODE_CACHE_DIR_PROPERTY);
+            } else {
+                System.setProperty(MochaJsEngine.CODE_CACHE_DIR_PROPERTY, property);
+            }
+        }
+    }
 //
 //    /**
 //     * Test of eval method, of class MochaJsEngine.
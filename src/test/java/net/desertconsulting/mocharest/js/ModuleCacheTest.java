@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.js;
+
+import java.io.FileNotFoundException;
+import java.io.StringReader;
+import java.util.Base64;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class ModuleCacheTest {
+
+    @Test
+    public void testNormalize() {
+        System.out.println("normalize");
+        assertEquals("/api.js", ModuleCache.normalize("./api.js"));
+        assertEquals("/api.js", ModuleCache.normalize("api.js"));
+        assertEquals("/api.js", ModuleCache.normalize("/lib/../api.js"));
+        assertEquals("/lib/api.js", ModuleCache.normalize("//lib/./api.js"));
+        assertEquals("/api.js", ModuleCache.normalize("../api.js"));
+        String uri = "data:text/plain;base64,Li8uLi8=";
+        assertEquals(uri, ModuleCache.normalize(uri));
+    }
+
+    @Test
+    public void testGetSource() throws Exception {
+        System.out.println("getSource");
+        int[] loads = new int[1];
+        ModuleCache instance = new ModuleCache();
+        ModuleCache.SourceLoader loader = path -> {
+            loads[0]++;
+            return "source of " + path;
+        };
+        assertEquals("source of /a.js", instance.getSource("/a.js", loader));
+        assertEquals("source of /a.js", instance.getSource("/a.js", loader));
+        assertEquals(1, loads[0]);
+        assertEquals(1, instance.size());
+        instance.clear();
+        assertEquals(0, instance.size());
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testGetSourceWithLoadError() throws Exception {
+        System.out.println("getSourceWithLoadError");
+        ModuleCache instance = new ModuleCache();
+        try {
+            instance.getSource("/a.js", path -> {
+                throw new FileNotFoundException(path);
+            });
+        } finally {
+            assertEquals(0, instance.size());
+        }
+    }
+
+    @Test
+    public void testRequireRunsModuleOncePerEngine() throws Exception {
+        System.out.println("requireRunsModuleOncePerEngine");
+        String module = dataUri("// counts its own loads\n"
+                + "loads = (typeof loads === 'undefined' ? 0 : loads) + 1;\n"
+                + "module.exports = {value: 42};");
+        ModuleCache cache = new ModuleCache();
+        MochaJsEngine first = new MochaJsEngine(null, cache);
+        MochaJsEngine second = new MochaJsEngine(null, cache);
+        String script = "var a = require('" + module + "');"
+                + "var b = require('" + module + "');"
+                + "a === b && a.value === 42 && loads === 1";
+
+        assertEquals(Boolean.TRUE, first.eval(new StringReader(script)));
+        assertEquals(Boolean.TRUE, second.eval(new StringReader(script)));
+        assertEquals(1, cache.size());
+        assertNotSame(first.require(module), second.require(module));
+    }
+
+    @Test
+    public void testRequireWithExports() throws Exception {
+        System.out.println("requireWithExports");
+        String module = dataUri("exports.name = 'test';\n"
+                + "exports.self = require('" + dataUri("module.exports = 1;")
+                + "');");
+        MochaJsEngine instance = new MochaJsEngine(null);
+        assertEquals("test", instance.eval(new StringReader(
+                "require('" + module + "').name")));
+        assertEquals(1, instance.eval(new StringReader(
+                "require('" + module + "').self")));
+    }
+
+    @Test
+    public void testRequireWithScriptError() throws Exception {
+        System.out.println("requireWithScriptError");
+        String module = dataUri("if (!failed) { failed = true; "
+                + "throw new Error('test'); }\nmodule.exports = 'loaded';");
+        MochaJsEngine instance = new MochaJsEngine(null);
+        instance.eval(new StringReader("var failed = false;"));
+        try {
+            instance.eval(new StringReader("require('" + module + "')"));
+            fail("expected a script error");
+        } catch (javax.script.ScriptException ex) {
+        }
+        assertEquals("loaded", instance.eval(new StringReader(
+                "require('" + module + "')")));
+    }
+
+    private static String dataUri(String content) {
+        return "data:text/plain;charset=utf-8;base64," + Base64.getEncoder().
+                encodeToString(content.getBytes());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.js;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import jdk.nashorn.api.scripting.JSObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares parsing a JSON request body into a {@link HashMap}, then read by
+ * Javascript through Java interop, with parsing it into a native Javascript
+ * object through {@code JSON.parse}. Each operation parses the body and walks
+ * it from Javascript one or more times. Run the main method with the test classpath, the GC
+ * profiler reports the bytes allocated per operation.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NativeBodyBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Number of times the handler walks the body.
+     */
+    @Param({"1", "10"})
+    int passes;
+
+    private byte[] body;
+    private JSObject parse;
+    private JSObject total;
+
+    @Setup
+    public void setUp() throws ScriptException {
+        StringBuilder sb = new StringBuilder("{\"items\": [");
+        for (int i = 0; i < 200; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\": ").append(i).append(", \"name\": \"item")
+                    .append(i).append("\", \"price\": ").append(i * 1.5)
+                    .append(", \"tags\": [\"a\", \"b\"]}");
+        }
+        body = sb.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("js");
+        parse = (JSObject) engine.eval("JSON.parse");
+        total = (JSObject) engine.eval("(function (body) {\n"
+                + "    var rv = 0;\n"
+                + "    for (var p = 0; p < " + passes + "; p++) {\n"
+                + "        for (var i = 0; i < body.items.length; i++) {\n"
+                + "            rv += body.items[i].price + body.items[i].tags.length;\n"
+                + "        }\n"
+                + "    }\n"
+                + "    return rv;\n"
+                + "})");
+    }
+
+    @Benchmark
+    public Object hashMapBody() throws IOException {
+        return total.call(null, mapper.readValue(body, HashMap.class));
+    }
+
+    @Benchmark
+    public Object nativeBody() {
+        return total.call(null, parse.call(null, new String(body,
+                StandardCharsets.UTF_8)));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(NativeBodyBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.js;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class TimerServiceTest {
+
+    @Test
+    public void testCallbacksRunOnLoopThreads() throws Exception {
+        System.out.println("callbacksRunOnLoopThreads");
+        TimerService instance = new TimerService();
+        try {
+            CountDownLatch done = new CountDownLatch(1);
+            String[] names = new String[2];
+            instance.getScheduler().schedule(() -> {
+                names[0] = Thread.currentThread().getName();
+                instance.getLoopExecutor().execute(() -> {
+                    names[1] = Thread.currentThread().getName();
+                    done.countDown();
+                });
+            }, 1, TimeUnit.MILLISECONDS);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertTrue(names[0].startsWith("mocharest-timer-"));
+            assertTrue(names[1].startsWith("mocharest-loop-"));
+        } finally {
+            instance.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        System.out.println("shutdown");
+        TimerService instance = new TimerService();
+        CountDownLatch fired = new CountDownLatch(1);
+        instance.getScheduler().schedule(fired::countDown, 50,
+                TimeUnit.MILLISECONDS);
+        instance.shutdown();
+        assertTrue(instance.isShutdown());
+        assertTrue(instance.getScheduler().awaitTermination(5,
+                TimeUnit.SECONDS));
+        assertEquals(1, fired.getCount());
+        try {
+            instance.getLoopExecutor().execute(() -> {
+            });
+            fail();
+        } catch (RejectedExecutionException ex) {
+        }
+    }
+
+    @Test
+    public void testGetWithoutContext() {
+        System.out.println("getWithoutContext");
+        TimerService instance = TimerService.get(null);
+        assertSame(instance, TimerService.get(null));
+        // the shared service outlives the callers shutting it down
+        instance.shutdown();
+        assertFalse(instance.isShutdown());
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.core.MediaType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares parsing a small request body with a mapper created for the
+ * request, as {@link MochaRequest} used to do, with parsing it with the
+ * shared reader of {@link CodecRegistry#DEFAULT}. Run the main method with
+ * the test classpath, the GC profiler reports the bytes allocated per
+ * operation.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BodyParsingBenchmark {
+
+    /**
+     * Media type of the body.
+     */
+    @Param({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    String mediaType;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        String text = MediaType.APPLICATION_JSON.equals(mediaType)
+                ? "{\"id\": 42, \"name\": \"item\", \"price\": 9.5, "
+                + "\"tags\": [\"a\", \"b\"], \"owner\": {\"name\": \"test\"}}"
+                : "<item><id>42</id><name>item</name><price>9.5</price>"
+                + "<tags>a</tags><tags>b</tags><owner><name>test</name>"
+                + "</owner></item>";
+        body = text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Object newMapper() throws IOException {
+        ObjectMapper mapper = MediaType.APPLICATION_XML.equals(mediaType)
+                ? new XmlMapper() : new ObjectMapper();
+        return mapper.readValue(new ByteArrayInputStream(body), HashMap.class);
+    }
+
+    @Benchmark
+    public Object sharedReader() throws IOException {
+        return CodecRegistry.DEFAULT.getReader(mediaType).readValue(
+                new ByteArrayInputStream(body));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BodyParsingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
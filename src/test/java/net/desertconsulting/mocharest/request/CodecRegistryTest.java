@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Map;
+import javax.ws.rs.core.MediaType;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class CodecRegistryTest {
+
+    @Test
+    public void testGetReader() throws Exception {
+        System.out.println("getReader");
+        Map<?, ?> json = CodecRegistry.DEFAULT.getReader(
+                MediaType.APPLICATION_JSON).readValue("{\"a\": 1}");
+        assertEquals(1, json.get("a"));
+        Map<?, ?> xml = CodecRegistry.DEFAULT.getReader(
+                MediaType.APPLICATION_XML).readValue("<r><a>1</a></r>");
+        assertEquals("1", xml.get("a"));
+        assertNull(CodecRegistry.DEFAULT.getReader(MediaType.TEXT_PLAIN));
+    }
+
+    @Test
+    public void testRegister() {
+        System.out.println("register");
+        CodecRegistry instance = new CodecRegistry();
+        assertSame(instance, instance.register("application/test",
+                new ObjectMapper()));
+        assertNotNull(instance.getReader("application/test"));
+        assertSame(instance.getReader("application/test"), instance.
+                getReader("application/test"));
+    }
+}
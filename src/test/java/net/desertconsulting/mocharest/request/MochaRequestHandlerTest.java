@@ -17,6 +17,7 @@ package net.desertconsulting.mocharest.request;
 
 import java.net.MalformedURLException;
 import java.util.regex.Pattern;
+import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 import javax.ws.rs.core.MediaType;
@@ -63,6 +64,66 @@ public class MochaRequestHandlerTest {
         assertEquals(expResult, result);
     }
 
+    @Test
+    public void testIsNativeBody() throws ScriptException,
+            MalformedURLException {
+        System.out.println("isNativeBody");
+        JSObject map = (JSObject) new ScriptEngineManager().
+                getEngineByName("js").eval(String.format(
+                "(function(){ return {contentType:'%s', nativeBody: true};})()",
+                MediaType.APPLICATION_JSON));
+        assertTrue(new MochaRequestHandler("/test", map).isNativeBody());
+        assertFalse(new MochaRequestHandler("/test").isNativeBody());
+    }
+
+    @Test
+    public void testGetLimiter() throws ScriptException,
+            MalformedURLException {
+        System.out.println("getLimiter");
+        JSObject map = (JSObject) new ScriptEngineManager().
+                getEngineByName("js").eval(String.format(
+                "(function(){ return {contentType:'%s', maxConcurrent: 4, "
+                + "maxQueue: 8, retryAfter: 5};})()",
+                MediaType.APPLICATION_JSON));
+        RouteLimiter limiter = new MochaRequestHandler("/test", map).
+                getLimiter();
+        assertEquals(4, limiter.getMaxConcurrent());
+        assertEquals(8, limiter.getMaxQueue());
+        assertEquals(5, limiter.getRetryAfter());
+        assertEquals(RouteLimiter.DEFAULT_QUEUE_TIMEOUT, limiter.
+                getQueueTimeout());
+        assertNull(new MochaRequestHandler("/test").getLimiter());
+    }
+
+    @Test
+    public void testGetStream() throws ScriptException,
+            MalformedURLException {
+        System.out.println("getStream");
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("js");
+        MochaRequestHandler instance = new MochaRequestHandler("/test",
+                (JSObject) engine.eval("({contentType: 'application/json', "
+                        + "stream: 'ndjson', onRecord: function(record) {}})"));
+        assertEquals(MochaRequestHandler.STREAM_NDJSON, instance.getStream());
+        assertTrue(instance.getOnRecord().isFunction());
+        instance = new MochaRequestHandler("/test", (JSObject) engine.eval(
+                "({contentType: 'application/json', stream: 'array'})"));
+        assertEquals(MochaRequestHandler.STREAM_ARRAY, instance.getStream());
+        assertNull(instance.getOnRecord());
+        assertNull(new MochaRequestHandler("/test").getStream());
+        try {
+            new MochaRequestHandler("/test", (JSObject) engine.eval(
+                    "({contentType: 'application/json', stream: 'csv'})"));
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+        try {
+            new MochaRequestHandler("/test", (JSObject) engine.eval(
+                    "({contentType: 'application/json', onRecord: 1})"));
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
     @Test
     public void testGetContentType2() throws ScriptException,
             MalformedURLException {
@@ -159,4 +220,22 @@ public class MochaRequestHandlerTest {
         instance = new MochaRequestHandler("/test/{test:hex}");
         assertArrayEquals(new byte[] {(byte)0x0F, (byte)0xFE, (byte)0xFF}, (byte[])instance.pathParameters.get("test").convert.apply("0FFEFF"));
     }
+
+    @Test
+    public void testConstructorWithQueryParameters() throws
+            MalformedURLException {
+        System.out.println("constructorWithQueryParameters");
+        MochaRequestHandler instance = new MochaRequestHandler(
+                "/test?test1&test2=x&test1");
+        assertArrayEquals(new String[]{"test1", "test2"},
+                instance.queryParameters);
+    }
+
+    @Test
+    public void testConstructorWithoutQueryParameters() throws
+            MalformedURLException {
+        System.out.println("constructorWithoutQueryParameters");
+        MochaRequestHandler instance = new MochaRequestHandler("/test");
+        assertEquals(0, instance.queryParameters.length);
+    }
 }
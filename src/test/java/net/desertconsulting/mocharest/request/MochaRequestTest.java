@@ -15,13 +15,38 @@
  */
 package net.desertconsulting.mocharest.request;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ClientErrorException;
 import javax.ws.rs.core.MediaType;
+import jdk.nashorn.api.scripting.JSObject;
 import net.desertconsulting.mocharest.BadRequestMissingQueryParamException;
+import net.desertconsulting.mocharest.JSTestFunction;
 import net.desertconsulting.mocharest.MockedRequest;
 import net.desertconsulting.mocharest.RestEngine;
 import org.junit.Test;
@@ -49,6 +74,20 @@ public class MochaRequestTest {
         assertEquals(expResult, result);
     }
 
+    @Test
+    public void testGetPathParameterAfterAFloat() throws MalformedURLException {
+        System.out.println("getPathParameterAfterAFloat");
+        MochaRequest instance = new MochaRequest(MockedRequest.create()
+                .withMethod(RestEngine.GET_METHOD)
+                .withTestBody("")
+                .withMimeType(MediaType.APPLICATION_JSON)
+                .withPath("/test/1.5/2").build().getMockInstance(),
+                new MochaRequestHandler("/test/{value:float}/{id:int}")
+        );
+        assertEquals(1.5F, instance.getPathParameter("value"));
+        assertEquals(2, instance.getPathParameter("id"));
+    }
+
     @Test
     public void testGetNotExistingPathParameter() throws MalformedURLException {
         System.out.println("getPathParameter");
@@ -190,6 +229,25 @@ public class MochaRequestTest {
         assertArrayEquals(new String[]{"1", "2"}, (String[]) result.get("test"));
     }
 
+    @Test
+    public void testGetParametersMapWithRequiredQueryParameters() throws
+            MalformedURLException, URISyntaxException {
+        System.out.println("getParametersMapWithRequiredQueryParameters");
+        MochaRequest instance = new MochaRequest(
+                MockedRequest.create()
+                        .withMethod(RestEngine.GET_METHOD)
+                        .withTestBody("")
+                        .withMimeType(MediaType.APPLICATION_JSON)
+                        .withPath("/test/1")
+                        .withQuery("test1=1&test2")
+                        .build().getMockInstance(),
+                new MochaRequestHandler("/test/{test:int}?test1&test2")
+        );
+        Map<String, Object> result = instance.getParametersMap();
+        assertEquals("1", result.get("test1"));
+        assertTrue(result.containsKey("test2"));
+    }
+
     @Test(expected = BadRequestException.class)
     public void testGetParametersMapWithBadPathParameter() throws
             MalformedURLException, URISyntaxException {
@@ -227,4 +285,472 @@ public class MochaRequestTest {
         assertTrue(result.containsKey("test"));
         assertArrayEquals(new String[]{"1", "2"}, (String[]) result.get("test"));
     }
+
+    @Test
+    public void testGetBodyIsLazy() throws Exception {
+        System.out.println("getBodyIsLazy");
+        AtomicInteger opens = new AtomicInteger();
+        MochaRequest instance = new MochaRequest(request("{\"test\":1}",
+                opens), new MochaRequestHandler("/test"));
+        assertEquals(0, opens.get());
+        Object body = instance.getBody();
+        assertEquals(1, ((Map) body).get("test"));
+        assertSame(body, instance.getBody());
+        assertEquals(1, opens.get());
+    }
+
+    @Test
+    public void testGetInputStreamWithoutGetBody() throws Exception {
+        System.out.println("getInputStreamWithoutGetBody");
+        String body = "{\"test\":1}";
+        MochaRequest instance = new MochaRequest(request(body,
+                new AtomicInteger()), new MochaRequestHandler("/test"));
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        try (InputStream input = instance.getInputStream()) {
+            int b;
+            while ((b = input.read()) >= 0) {
+                raw.write(b);
+            }
+        }
+        assertEquals(body, raw.toString("UTF-8"));
+    }
+
+    @Test
+    public void testGetRawBody() throws Exception {
+        System.out.println("getRawBody");
+        byte[] body = new byte[]{0, 1, (byte) 0xff, 'a'};
+        AtomicInteger opens = new AtomicInteger();
+        MochaRequest instance = new MochaRequest(request(body,
+                MediaType.APPLICATION_OCTET_STREAM, body.length, opens),
+                new MochaRequestHandler("/test"));
+        ByteBuffer result = instance.getRawBody();
+        assertTrue(result.isReadOnly());
+        byte[] read = new byte[result.remaining()];
+        result.get(read);
+        assertArrayEquals(body, read);
+        // every call gets its own position
+        assertEquals(body.length, instance.getRawBody().remaining());
+        assertArrayEquals(body, instance.getBodyAsBytes());
+        assertEquals(1, opens.get());
+    }
+
+    @Test
+    public void testGetRawBodyWithUnknownLength() throws Exception {
+        System.out.println("getRawBodyWithUnknownLength");
+        byte[] body = new byte[20000];
+        Arrays.fill(body, (byte) 'a');
+        MochaRequest instance = new MochaRequest(request(body,
+                MediaType.APPLICATION_OCTET_STREAM, -1, new AtomicInteger()),
+                new MochaRequestHandler("/test"));
+        assertArrayEquals(body, instance.getBodyAsBytes());
+    }
+
+    @Test
+    public void testGetBodyAsString() throws Exception {
+        System.out.println("getBodyAsString");
+        String body = "caf\u00e9";
+        byte[] latin1 = body.getBytes(StandardCharsets.ISO_8859_1);
+        MochaRequest instance = new MochaRequest(request(latin1,
+                MediaType.TEXT_PLAIN, latin1.length, new AtomicInteger()),
+                new MochaRequestHandler("/test"));
+        assertEquals(body, instance.getBodyAsString("ISO-8859-1"));
+        assertEquals(new String(latin1, StandardCharsets.UTF_8), instance.
+                getBodyAsString());
+    }
+
+    @Test
+    public void testGetBodyAfterGetRawBody() throws Exception {
+        System.out.println("getBodyAfterGetRawBody");
+        MochaRequest instance = new MochaRequest(request("{\"test\":1}",
+                new AtomicInteger()), new MochaRequestHandler("/test"));
+        assertEquals("{\"test\":1}", instance.getBodyAsString());
+        assertEquals(1, ((Map) instance.getBody()).get("test"));
+    }
+
+    @Test
+    public void testSpilledBody() throws Exception {
+        System.out.println("spilledBody");
+        Path dir = Files.createTempDirectory("mocharest-test");
+        try {
+            MochaRequest instance = new MochaRequest(request("{\"test\":1}",
+                    new AtomicInteger()), new MochaRequestHandler("/test"));
+            instance.setSpillThreshold(4);
+            instance.setSpillDirectory(dir);
+            ByteBuffer result = instance.getRawBody();
+            assertTrue(result instanceof MappedByteBuffer);
+            assertTrue(result.isReadOnly());
+            assertTrue(Files.exists(instance.getSpillFile()));
+            assertEquals(dir, instance.getSpillFile().getParent());
+            assertEquals("{\"test\":1}", instance.getBodyAsString());
+            assertEquals(1, ((Map) instance.getBody()).get("test"));
+            Path file = instance.getSpillFile();
+            instance.releaseBody();
+            assertFalse(Files.exists(file));
+            assertNull(instance.getSpillFile());
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testSpilledBodyWithUnknownLength() throws Exception {
+        System.out.println("spilledBodyWithUnknownLength");
+        byte[] body = new byte[20000];
+        Arrays.fill(body, (byte) 'a');
+        MochaRequest instance = new MochaRequest(request(body,
+                MediaType.APPLICATION_OCTET_STREAM, -1, new AtomicInteger()),
+                new MochaRequestHandler("/test"));
+        instance.setSpillThreshold(body.length - 1);
+        assertArrayEquals(body, instance.getBodyAsBytes());
+        assertNotNull(instance.getSpillFile());
+        instance.releaseBody();
+
+        instance = new MochaRequest(request(body,
+                MediaType.APPLICATION_OCTET_STREAM, -1, new AtomicInteger()),
+                new MochaRequestHandler("/test"));
+        instance.setSpillThreshold(body.length);
+        assertArrayEquals(body, instance.getBodyAsBytes());
+        assertNull(instance.getSpillFile());
+    }
+
+    @Test
+    public void testReleaseBodyClosesStreams() throws Exception {
+        System.out.println("releaseBodyClosesStreams");
+        Path dir = Files.createTempDirectory("mocharest-test");
+        try {
+            MochaRequest instance = new MochaRequest(request("{\"test\":1}",
+                    new AtomicInteger()), new MochaRequestHandler("/test"));
+            instance.setSpillThreshold(4);
+            instance.setSpillDirectory(dir);
+            InputStream input = instance.getBodyStream();
+            assertEquals('{', input.read());
+            assertEquals("{\"test\":1}", instance.getBodyAsString());
+            instance.releaseBody();
+            try {
+                input.read();
+                fail();
+            } catch (IOException ex) {
+            }
+            try (Stream<Path> files = Files.list(dir)) {
+                assertEquals(0, files.count());
+            }
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testMaxBodySize() throws Exception {
+        System.out.println("maxBodySize");
+        byte[] body = new byte[20000];
+        Arrays.fill(body, (byte) 'a');
+        MochaRequest instance = new MochaRequest(request(body,
+                MediaType.APPLICATION_OCTET_STREAM, body.length,
+                new AtomicInteger()), new MochaRequestHandler("/test"));
+        instance.setMaxBodySize(body.length - 1);
+        for (int i = 0; i < 2; i++) {
+            try {
+                instance.getRawBody();
+                fail();
+            } catch (ClientErrorException ex) {
+                assertEquals(413, ex.getResponse().getStatus());
+            }
+        }
+
+        // unknown length, spilled then refused
+        Path dir = Files.createTempDirectory("mocharest-test");
+        try {
+            instance = new MochaRequest(request(body,
+                    MediaType.APPLICATION_OCTET_STREAM, -1, new AtomicInteger()),
+                    new MochaRequestHandler("/test"));
+            instance.setSpillThreshold(100);
+            instance.setSpillDirectory(dir);
+            instance.setMaxBodySize(body.length - 1);
+            try {
+                instance.getBodyStream();
+                fail();
+            } catch (ClientErrorException ex) {
+                assertEquals(413, ex.getResponse().getStatus());
+            }
+            assertNull(instance.getSpillFile());
+            try (Stream<Path> files = Files.list(dir)) {
+                assertEquals(0, files.count());
+            }
+        } finally {
+            Files.delete(dir);
+        }
+
+        // unknown length, kept on the heap
+        instance = new MochaRequest(request(body,
+                MediaType.APPLICATION_OCTET_STREAM, -1, new AtomicInteger()),
+                new MochaRequestHandler("/test"));
+        instance.setSpillThreshold(-1);
+        instance.setMaxBodySize(body.length);
+        assertArrayEquals(body, instance.getBodyAsBytes());
+        instance.setMaxBodySize(-1);
+        assertEquals(-1, instance.getMaxBodySize());
+    }
+
+    @Test
+    public void testSpillDisabled() throws Exception {
+        System.out.println("spillDisabled");
+        MochaRequest instance = new MochaRequest(request("{\"test\":1}",
+                new AtomicInteger()), new MochaRequestHandler("/test"));
+        instance.setSpillThreshold(-1);
+        assertFalse(instance.getRawBody() instanceof MappedByteBuffer);
+        assertNull(instance.getSpillFile());
+    }
+
+    @Test
+    public void testGetBodyReader() throws Exception {
+        System.out.println("getBodyReader");
+        MochaRequest instance = new MochaRequest(request("{\"test\":1}",
+                new AtomicInteger()), new MochaRequestHandler("/test"));
+        instance.setSpillThreshold(0);
+        try {
+            for (int i = 0; i < 2; i++) {
+                try (BufferedReader reader = new BufferedReader(instance.
+                        getBodyReader())) {
+                    assertEquals("{\"test\":1}", reader.readLine());
+                }
+            }
+            try (InputStream input = instance.getBodyStream()) {
+                assertEquals('{', input.read());
+            }
+        } finally {
+            instance.releaseBody();
+        }
+    }
+
+    @Test
+    public void testForEachRecordNdjson() throws Exception {
+        System.out.println("forEachRecordNdjson");
+        AtomicInteger opens = new AtomicInteger();
+        MochaRequest instance = new MochaRequest(request(
+                "{\"id\":1}\n{\"id\":2}\n\n3\n", opens), handler("ndjson"));
+        List<Object> records = new ArrayList<>();
+        assertEquals(3, instance.forEachRecord(collect(records)));
+        assertEquals(3, instance.getRecordCount());
+        assertEquals(Collections.singletonMap("id", 1), records.get(0));
+        assertEquals(Collections.singletonMap("id", 2), records.get(1));
+        assertEquals(3, records.get(2));
+        // read straight from the input stream, the body isn't parsed
+        assertNull(instance.getBody());
+        assertNull(instance.getRawBody());
+        assertEquals(1, opens.get());
+    }
+
+    @Test
+    public void testForEachRecordArray() throws Exception {
+        System.out.println("forEachRecordArray");
+        MochaRequest instance = new MochaRequest(request(
+                "[{\"id\":1}, \"two\", 3]", new AtomicInteger()),
+                handler("array"));
+        // records are read from the raw body once it has been read
+        assertNotNull(instance.getRawBody());
+        List<Object> records = new ArrayList<>();
+        JSObject callback = collect(records);
+        assertEquals(3, instance.forEachRecord(callback));
+        assertEquals(Arrays.asList(Collections.singletonMap("id", 1), "two",
+                3), records);
+
+        // the kind of stream is told by the body without the stream option
+        instance = new MochaRequest(request("[1, 2]", new AtomicInteger()),
+                new MochaRequestHandler("/test"));
+        records.clear();
+        assertEquals(2, instance.forEachRecord(callback));
+        assertEquals(Arrays.asList(1, 2), records);
+    }
+
+    @Test
+    public void testForEachRecordStrict() throws Exception {
+        System.out.println("forEachRecordStrict");
+        List<Object> records = new ArrayList<>();
+        JSObject callback = collect(records);
+        // a top-level array isn't a newline-delimited record
+        try {
+            new MochaRequest(request("{\"id\":1}\n[2, 3]\n",
+                    new AtomicInteger()), handler("ndjson")).
+                    forEachRecord(callback);
+            fail();
+        } catch (BadRequestException ex) {
+            assertEquals(1, records.size());
+            assertTrue(ex.getMessage().contains("1 records processed"));
+        }
+        records.clear();
+        try {
+            new MochaRequest(request("[{\"id\":1}]", new AtomicInteger()),
+                    handler("ndjson")).forEachRecord(callback);
+            fail();
+        } catch (BadRequestException ex) {
+            assertEquals(0, records.size());
+        }
+        try {
+            new MochaRequest(request("{\"id\":1}\n]\n{\"id\":2}",
+                    new AtomicInteger()), handler("ndjson")).
+                    forEachRecord(callback);
+            fail();
+        } catch (BadRequestException ex) {
+            assertEquals(1, records.size());
+        }
+        // nothing may follow the array
+        records.clear();
+        try {
+            new MochaRequest(request("[1, 2] 3", new AtomicInteger()),
+                    handler("array")).forEachRecord(callback);
+            fail();
+        } catch (BadRequestException ex) {
+            assertEquals(2, records.size());
+            assertTrue(ex.getMessage().contains("2 records processed"));
+        }
+        records.clear();
+        assertEquals(2, new MochaRequest(request("[1, 2]\n",
+                new AtomicInteger()), handler("array")).forEachRecord(
+                callback));
+    }
+
+    @Test
+    public void testForEachRecordMalformed() throws Exception {
+        System.out.println("forEachRecordMalformed");
+        List<Object> records = new ArrayList<>();
+        JSObject callback = collect(records);
+        try {
+            new MochaRequest(request("{\"id\":1}\n{\"id\":",
+                    new AtomicInteger()), handler("ndjson")).
+                    forEachRecord(callback);
+            fail();
+        } catch (BadRequestException ex) {
+            assertEquals(1, records.size());
+        }
+        try {
+            new MochaRequest(request("{\"id\":1}", new AtomicInteger()),
+                    handler("array")).forEachRecord(callback);
+            fail();
+        } catch (BadRequestException ex) {
+        }
+        try {
+            new MochaRequest(request("[1, 2", new AtomicInteger()),
+                    handler("array")).forEachRecord(callback);
+            fail();
+        } catch (BadRequestException ex) {
+        }
+    }
+
+    @Test
+    public void testForEachRecordLargeBody() throws Exception {
+        System.out.println("forEachRecordLargeBody");
+        int count = 100000;
+        byte[] line = "{\"id\":1,\"name\":\"record\"}\n".getBytes(
+                StandardCharsets.UTF_8);
+        // records generated on the fly, the body is never held as a whole
+        InputStream body = new InputStream() {
+            private long position;
+
+            @Override
+            public int read() {
+                if (position >= (long) count * line.length) {
+                    return -1;
+                }
+                return line[(int) (position++ % line.length)];
+            }
+        };
+        MochaRequest instance = new MochaRequest(request(body,
+                MediaType.APPLICATION_JSON, -1, new AtomicInteger()),
+                handler("ndjson"));
+        AtomicInteger seen = new AtomicInteger();
+        assertEquals(count, instance.forEachRecord(new JSTestFunction(
+                (Object _this, Object... args) -> {
+                    assertEquals((long) seen.getAndIncrement(), args[1]);
+                    return null;
+                }).getMockInstance()));
+        assertNull(instance.getSpillFile());
+    }
+
+    /**
+     * A handler for /test with the given stream option.
+     */
+    private static MochaRequestHandler handler(String stream) throws
+            ScriptException, MalformedURLException {
+        return new MochaRequestHandler("/test", (JSObject) new ScriptEngineManager().
+                getEngineByName("js").eval("({contentType: 'application/json', "
+                        + "stream: '" + stream + "'})"));
+    }
+
+    private static JSObject collect(List<Object> records) {
+        return new JSTestFunction((Object _this, Object... args) -> {
+            records.add(args[0]);
+            return null;
+        }).getMockInstance();
+    }
+
+    /**
+     * A POST request to /test with a JSON body that can be read once.
+     */
+    private static HttpServletRequest request(String body,
+            AtomicInteger opens) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return request(bytes, MediaType.APPLICATION_JSON, bytes.length, opens);
+    }
+
+    /**
+     * A POST request to /test whose body can be read once.
+     */
+    private static HttpServletRequest request(byte[] body, String contentType,
+            int contentLength, AtomicInteger opens) {
+        return request(new ByteArrayInputStream(body), contentType,
+                contentLength, opens);
+    }
+
+    /**
+     * A POST request to /test whose body is read from a stream.
+     */
+    private static HttpServletRequest request(InputStream bytes,
+            String contentType, int contentLength, AtomicInteger opens) {
+        ServletInputStream stream = new ServletInputStream() {
+            @Override
+            public boolean isFinished() {
+                try {
+                    return bytes.available() == 0;
+                } catch (IOException ex) {
+                    return true;
+                }
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+            }
+
+            @Override
+            public int read() throws IOException {
+                return bytes.read();
+            }
+        };
+        return (HttpServletRequest) Proxy.newProxyInstance(
+                HttpServletRequest.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMethod":
+                            return RestEngine.POST_METHOD;
+                        case "getPathInfo":
+                            return "/test";
+                        case "getContentType":
+                            return contentType;
+                        case "getContentLength":
+                            return contentLength;
+                        case "getParameterMap":
+                            return Collections.emptyMap();
+                        case "getInputStream":
+                            opens.incrementAndGet();
+                            return stream;
+                        default:
+                            return null;
+                    }
+                });
+    }
 }
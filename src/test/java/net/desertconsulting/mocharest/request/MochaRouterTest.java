@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class MochaRouterTest {
+
+    private final static String[] ROUTES = new String[]{
+        "/test",
+        "/test/{id:int}",
+        "/test/{name:string}",
+        "/test/new",
+        "/test/{id:int}/items/{item:long}",
+        "/test/{id:int}/items",
+        "/test/{id:int}.json",
+        "/test/{id:int}-raw",
+        "/values/{value:float}",
+        "/values/{value:double}/raw",
+        "/blobs/{data:hex}",
+        "/files/.*",
+        "/users/{name:string}/profile",
+        "/users/me/profile",
+        "/",
+        ""
+    };
+
+    private final static String[] PATHS = new String[]{
+        "/test", "/test/", "/test/1", "/test/new", "/test/abc", "/test/1/",
+        "/test/1/items", "/test/1/items/2", "/test/1/items/x",
+        "/test/1.json", "/test/a.json", "/test/1json", "/test/1-raw", "/values/1.5",
+        "/values/.5", "/values/1", "/values/2.25/raw", "/blobs/0FFEFF",
+        "/blobs/0ffeff", "/blobs/f", "/blobs/zz", "/files/a/b/c", "/files/",
+        "/users/me/profile", "/users/john/profile", "/users//profile", "/",
+        "", "/unknown", "test", "//test"
+    };
+
+    @Test
+    public void testFindMatchesRegexScan() throws MalformedURLException {
+        System.out.println("findMatchesRegexScan");
+        List<MochaRequestHandler> handlers = new ArrayList<>();
+        MochaRouter instance = new MochaRouter();
+        for (String route : ROUTES) {
+            MochaRequestHandler handler = new MochaRequestHandler(route);
+            handlers.add(handler);
+            instance.add(handler);
+        }
+
+        for (String path : PATHS) {
+            MochaRequestHandler expResult = handlers.stream()
+                    .filter(h -> h.getPathPattern().matcher(path).matches())
+                    .findFirst().orElse(null);
+            RouteMatch result = instance.find(path);
+            if (expResult == null) {
+                assertNull(path, result);
+            } else {
+                assertSame(path, expResult, result.getHandler());
+                RouteMatch expMatch = expResult.match(path);
+                for (int i = 0; i < expResult.pathParameterList.length; i++) {
+                    assertEquals(path, expMatch.getStart(i), result.getStart(i));
+                    assertEquals(path, expMatch.getEnd(i), result.getEnd(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFindFirstRegisteredWins() throws MalformedURLException {
+        System.out.println("findFirstRegisteredWins");
+        MochaRequestHandler param = new MochaRequestHandler("/test/{id:string}");
+        MochaRequestHandler literal = new MochaRequestHandler("/test/new");
+        MochaRouter instance = new MochaRouter();
+        instance.add(param);
+        instance.add(literal);
+        assertSame(param, instance.find("/test/new").getHandler());
+    }
+
+    @Test
+    public void testFindLiteralRegisteredFirst() throws MalformedURLException {
+        System.out.println("findLiteralRegisteredFirst");
+        MochaRequestHandler literal = new MochaRequestHandler("/test/new");
+        MochaRequestHandler param = new MochaRequestHandler("/test/{id:string}");
+        MochaRouter instance = new MochaRouter();
+        instance.add(literal);
+        instance.add(param);
+        assertSame(literal, instance.find("/test/new").getHandler());
+        assertSame(param, instance.find("/test/old").getHandler());
+    }
+
+    @Test
+    public void testFindDuplicatedRoute() throws MalformedURLException {
+        System.out.println("findDuplicatedRoute");
+        MochaRequestHandler first = new MochaRequestHandler("/test/{id:int}");
+        MochaRequestHandler second = new MochaRequestHandler("/test/{id:int}");
+        MochaRouter instance = new MochaRouter();
+        instance.add(first);
+        instance.add(second);
+        assertSame(first, instance.find("/test/1").getHandler());
+    }
+
+    @Test
+    public void testFindParameterSpans() throws MalformedURLException {
+        System.out.println("findParameterSpans");
+        String path = "/test/12/items/345-raw";
+        MochaRouter instance = new MochaRouter();
+        instance.add(new MochaRequestHandler("/test/{id:int}/items/{item:long}-raw"));
+        RouteMatch result = instance.find(path);
+        assertEquals("12", path.substring(result.getStart(0), result.getEnd(0)));
+        assertEquals("345", path.substring(result.getStart(1), result.getEnd(1)));
+    }
+
+    @Test
+    public void testFindWithNullPath() throws MalformedURLException {
+        System.out.println("findWithNullPath");
+        MochaRouter instance = new MochaRouter();
+        instance.add(new MochaRequestHandler("/test"));
+        assertNull(instance.find(null));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import net.desertconsulting.mocharest.MockedRequest;
+import net.desertconsulting.mocharest.RestEngine;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class ParametersMapViewTest {
+
+    @Test
+    public void testGet() {
+        System.out.println("get");
+        ParametersMapView instance = new ParametersMapView(request(
+                "a=1&b=2&b=3&c"));
+        assertEquals("1", instance.get("a"));
+        assertArrayEquals(new String[]{"2", "3"}, (String[]) instance.get("b"));
+        assertTrue(instance.containsKey("c"));
+        assertNull(instance.get("c"));
+        assertNull(instance.get("d"));
+        assertEquals(3, instance.size());
+    }
+
+    @Test
+    public void testEntrySet() {
+        System.out.println("entrySet");
+        ParametersMapView instance = new ParametersMapView(request("a=1&b=2"));
+        Map<String, Object> result = new HashMap<>(instance);
+        assertEquals("1", result.get("a"));
+        assertEquals("2", result.get("b"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPut() {
+        System.out.println("put");
+        ParametersMapView instance = new ParametersMapView(request("a=1"));
+        instance.put("a", "2");
+    }
+
+    @Test
+    public void testParameterMapIsReadLazily() {
+        System.out.println("parameterMapIsReadLazily");
+        int[] calls = new int[1];
+        HttpServletRequest request = new mockit.MockUp<HttpServletRequest>() {
+            @mockit.Mock
+            public Map<String, String[]> getParameterMap() {
+                calls[0]++;
+                return new HashMap<>();
+            }
+        }.getMockInstance();
+        ParametersMapView instance = new ParametersMapView(request);
+        assertEquals(0, calls[0]);
+        instance.get("a");
+        instance.get("b");
+        assertEquals(1, calls[0]);
+    }
+
+    private static HttpServletRequest request(String query) {
+        return MockedRequest.create()
+                .withMethod(RestEngine.GET_METHOD)
+                .withQuery(query)
+                .build().getMockInstance();
+    }
+}
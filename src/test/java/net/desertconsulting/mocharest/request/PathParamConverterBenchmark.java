@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the span-based path parameter converters with the substring-based
+ * ones they replaced. Run the main method with the test classpath, the GC
+ * profiler reports the bytes allocated per operation.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathParamConverterBenchmark {
+
+    private final static int INT_START = 6;
+    private final static int INT_END = 12;
+    private final static int HEX_START = 13;
+
+    private final String path = "/test/123456/0a1b2c3d4e5f";
+
+    @Benchmark
+    public Object intSubstring() {
+        return Integer.parseInt(path.substring(INT_START, INT_END));
+    }
+
+    @Benchmark
+    public Object intSpan() {
+        return PathParamConverters.toInt(path, INT_START, INT_END);
+    }
+
+    @Benchmark
+    public Object hexBigInteger() {
+        return new BigInteger(path.substring(HEX_START).toUpperCase(), 16).
+                toByteArray();
+    }
+
+    @Benchmark
+    public Object hexSpan() {
+        return PathParamConverters.toBytes(path, HEX_START, path.length());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PathParamConverterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
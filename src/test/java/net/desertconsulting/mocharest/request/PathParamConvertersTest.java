@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+import java.math.BigInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class PathParamConvertersTest {
+
+    @Test
+    public void testToInt() {
+        System.out.println("toInt");
+        String[] values = new String[]{"0", "1", "007", "-1", "+5",
+            "2147483647", "-2147483648"};
+        for (String value : values) {
+            assertEquals(value, Integer.parseInt(value),
+                    PathParamConverters.toInt(value, 0, value.length()));
+        }
+        String path = "/test/123/x";
+        assertEquals(123, PathParamConverters.toInt(path, 6, 9));
+    }
+
+    @Test
+    public void testToIntWithIllegalValues() {
+        System.out.println("toIntWithIllegalValues");
+        String[] values = new String[]{"", "-", "+", "2147483648",
+            "-2147483649", "115123123123", "1a", " 1"};
+        for (String value : values) {
+            try {
+                PathParamConverters.toInt(value, 0, value.length());
+                fail(value);
+            } catch (NumberFormatException ex) {
+            }
+        }
+    }
+
+    @Test
+    public void testToLong() {
+        System.out.println("toLong");
+        String[] values = new String[]{"0", "115123123123",
+            "9223372036854775807", "-9223372036854775808"};
+        for (String value : values) {
+            assertEquals(value, Long.parseLong(value),
+                    PathParamConverters.toLong(value, 0, value.length()));
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testToLongOverflow() {
+        System.out.println("toLongOverflow");
+        String value = "9223372036854775808";
+        PathParamConverters.toLong(value, 0, value.length());
+    }
+
+    @Test
+    public void testToBytes() {
+        System.out.println("toBytes");
+        String[] values = new String[]{"00", "0000", "01", "0FFEFF", "ff",
+            "7f", "80", "abc", "0abc", "00ff", "DEADBEEF", "1234567890abcdef"};
+        for (String value : values) {
+            assertArrayEquals(value, new BigInteger(value.toUpperCase(), 16).
+                    toByteArray(), (byte[]) PathParamConverters.toBytes(value,
+                            0, value.length()));
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testToBytesWithIllegalValue() {
+        System.out.println("toBytesWithIllegalValue");
+        String value = "0g";
+        PathParamConverters.toBytes(value, 0, value.length());
+    }
+
+    @Test
+    public void testToString() {
+        System.out.println("toString");
+        String path = "/test/abc/x";
+        assertEquals("abc", PathParamConverters.toString(path, 6, 9));
+    }
+}
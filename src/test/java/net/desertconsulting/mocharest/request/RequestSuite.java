@@ -23,6 +23,6 @@ import org.junit.runners.Suite;
  * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({net.desertconsulting.mocharest.request.BadRequestParamExceptionTest.class, net.desertconsulting.mocharest.request.MochaRequestHandlerTest.class, net.desertconsulting.mocharest.request.MochaRequestTest.class})
+@Suite.SuiteClasses({net.desertconsulting.mocharest.request.BadRequestParamExceptionTest.class, net.desertconsulting.mocharest.request.MochaRequestHandlerTest.class, net.desertconsulting.mocharest.request.MochaRequestTest.class, net.desertconsulting.mocharest.request.MochaRouterTest.class, net.desertconsulting.mocharest.request.RouteCacheTest.class, net.desertconsulting.mocharest.request.PathParamConvertersTest.class, net.desertconsulting.mocharest.request.ParametersMapViewTest.class, net.desertconsulting.mocharest.request.RouteLimiterTest.class, net.desertconsulting.mocharest.request.RouteLimitersTest.class, net.desertconsulting.mocharest.request.CodecRegistryTest.class})
 public class RequestSuite {
 }
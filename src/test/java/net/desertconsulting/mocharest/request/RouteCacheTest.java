@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+import java.net.MalformedURLException;
+import java.util.Map;
+import net.desertconsulting.mocharest.RestEngine;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class RouteCacheTest {
+
+    @Test
+    public void testGet() throws MalformedURLException {
+        System.out.println("get");
+        MochaRequestHandler handler = new MochaRequestHandler("/test/{id:int}");
+        RouteMatch match = handler.match("/test/1");
+        RouteCache instance = new RouteCache(10);
+        assertNull(instance.get(RestEngine.GET_METHOD, "/test/1"));
+        instance.put(RestEngine.GET_METHOD, match);
+        assertSame(match, instance.get(RestEngine.GET_METHOD, "/test/1"));
+        assertNull(instance.get(RestEngine.POST_METHOD, "/test/1"));
+        assertEquals(1, instance.getHitCount());
+        assertEquals(2, instance.getMissCount());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws MalformedURLException {
+        System.out.println("evictsLeastRecentlyUsed");
+        MochaRequestHandler handler = new MochaRequestHandler("/test/{id:int}");
+        RouteCache instance = new RouteCache(1);
+        instance.put(RestEngine.GET_METHOD, handler.match("/test/1"));
+        instance.put(RestEngine.GET_METHOD, handler.match("/test/2"));
+        assertNull(instance.get(RestEngine.GET_METHOD, "/test/1"));
+        assertNotNull(instance.get(RestEngine.GET_METHOD, "/test/2"));
+    }
+
+    @Test
+    public void testSizeIsBounded() throws MalformedURLException {
+        System.out.println("sizeIsBounded");
+        MochaRequestHandler handler = new MochaRequestHandler("/test/{id:int}");
+        RouteCache instance = new RouteCache(64);
+        for (int i = 0; i < 1000; i++) {
+            instance.put(RestEngine.GET_METHOD, handler.match("/test/" + i));
+        }
+        assertTrue(instance.size() <= instance.getMaxSize());
+        assertTrue(instance.size() > 0);
+    }
+
+    @Test
+    public void testSizeIsExact() throws MalformedURLException {
+        System.out.println("sizeIsExact");
+        MochaRequestHandler handler = new MochaRequestHandler("/test/{id:int}");
+        for (int maxSize : new int[]{1, 3, 10, 17, 100, 1000}) {
+            RouteCache instance = new RouteCache(maxSize);
+            // enough paths to fill every stripe
+            for (int i = 0; i < maxSize * 50; i++) {
+                instance.put(RestEngine.GET_METHOD, handler.match("/test/"
+                        + i));
+            }
+            assertEquals(maxSize, instance.size());
+        }
+    }
+
+    @Test
+    public void testCachedMatchParametersAreNotShared() throws
+            MalformedURLException {
+        System.out.println("cachedMatchParametersAreNotShared");
+        MochaRequestHandler handler = new MochaRequestHandler(
+                "/test/{id:int}/{key:hex}");
+        RouteCache instance = new RouteCache(10);
+        instance.put(RestEngine.GET_METHOD, handler.match("/test/1/ff"));
+        RouteMatch match = instance.get(RestEngine.GET_METHOD, "/test/1/ff");
+        Map<String, Object> first = match.getPathParameters();
+        ((byte[]) first.get("key"))[0] = 0;
+        first.put("id", 2);
+        Map<String, Object> second = match.getPathParameters();
+        assertEquals(1, second.get("id"));
+        assertArrayEquals((byte[]) handler.match("/test/1/ff").
+                getPathParameters().get("key"), (byte[]) second.get("key"));
+    }
+
+    @Test
+    public void testClear() throws MalformedURLException {
+        System.out.println("clear");
+        MochaRequestHandler handler = new MochaRequestHandler("/test/{id:int}");
+        RouteCache instance = new RouteCache(10);
+        instance.put(RestEngine.GET_METHOD, handler.match("/test/1"));
+        instance.clear();
+        assertEquals(0, instance.size());
+        assertNull(instance.get(RestEngine.GET_METHOD, "/test/1"));
+    }
+
+    @Test
+    public void testPutStaleGeneration() throws MalformedURLException {
+        System.out.println("putStaleGeneration");
+        MochaRequestHandler handler = new MochaRequestHandler("/test/{id:int}");
+        RouteCache instance = new RouteCache(10);
+        long generation = instance.getGeneration();
+        // a handler has been registered after the match was looked up
+        instance.clear();
+        instance.put(RestEngine.GET_METHOD, handler.match("/test/1"),
+                generation);
+        assertEquals(0, instance.size());
+        instance.put(RestEngine.GET_METHOD, handler.match("/test/1"),
+                instance.getGeneration());
+        assertEquals(1, instance.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorWithIllegalSize() {
+        System.out.println("constructorWithIllegalSize");
+        RouteCache instance = new RouteCache(0);
+    }
+}
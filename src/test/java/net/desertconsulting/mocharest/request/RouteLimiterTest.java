@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class RouteLimiterTest {
+
+    @Test
+    public void testAcquire() {
+        System.out.println("acquire");
+        RouteLimiter instance = new RouteLimiter(2, 0, 0, 1);
+        assertTrue(instance.acquire());
+        assertTrue(instance.acquire());
+        assertEquals(2, instance.getActive());
+        assertFalse(instance.acquire());
+        assertEquals(1, instance.getRejectedCount());
+        instance.release();
+        assertTrue(instance.acquire());
+        assertEquals(3, instance.getAcceptedCount());
+        assertEquals(1, instance.getRejectedCount());
+    }
+
+    @Test
+    public void testAcquireQueued() throws Exception {
+        System.out.println("acquireQueued");
+        RouteLimiter instance = new RouteLimiter(1, 1, 5000, 1);
+        assertTrue(instance.acquire());
+        AtomicBoolean acquired = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(1);
+        new Thread(() -> {
+            acquired.set(instance.acquire());
+            done.countDown();
+        }).start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (instance.getQueued() == 0 && System.currentTimeMillis()
+                < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, instance.getQueued());
+        // the queue is full
+        assertFalse(instance.acquire());
+        instance.release();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(acquired.get());
+        assertEquals(0, instance.getQueued());
+        assertEquals(1, instance.getRejectedCount());
+    }
+
+    @Test
+    public void testAcquireQueueTimeout() {
+        System.out.println("acquireQueueTimeout");
+        RouteLimiter instance = new RouteLimiter(1, 1, 10, 1);
+        assertTrue(instance.acquire());
+        assertFalse(instance.acquire());
+        assertEquals(1, instance.getRejectedCount());
+        assertEquals(0, instance.getQueued());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxConcurrent() {
+        System.out.println("invalidMaxConcurrent");
+        new RouteLimiter(0, 0, 0, 1);
+    }
+}
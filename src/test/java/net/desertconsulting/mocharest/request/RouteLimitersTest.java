@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.request;
+
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class RouteLimitersTest {
+
+    @Test
+    public void testRegisterSameLimits() {
+        System.out.println("registerSameLimits");
+        RouteLimiters instance = new RouteLimiters();
+        RouteLimiter first = instance.register("GET", "/test",
+                new RouteLimiter(1, 2, 3, 4));
+        assertTrue(first.acquire());
+        // e.g. another engine of the pool, or a reload
+        assertSame(first, instance.register("GET", "/test",
+                new RouteLimiter(1, 2, 3, 4)));
+        assertEquals(1, first.getActive());
+        assertNotSame(first, instance.register("POST", "/test",
+                new RouteLimiter(1, 2, 3, 4)));
+    }
+
+    @Test
+    public void testRegisterChangedLimits() {
+        System.out.println("registerChangedLimits");
+        RouteLimiters instance = new RouteLimiters();
+        RouteLimiter first = instance.register("GET", "/test",
+                new RouteLimiter(1, 0, 0, 1));
+        RouteLimiter changed = new RouteLimiter(2, 0, 0, 1);
+        assertSame(changed, instance.register("GET", "/test", changed));
+        assertNotSame(first, changed);
+        assertSame(changed, instance.getLimiters().get("GET /test"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetLimitersIsReadOnly() {
+        System.out.println("getLimitersIsReadOnly");
+        Map<String, RouteLimiter> limiters = new RouteLimiters().getLimiters();
+        limiters.put("GET /test", new RouteLimiter(1, 0, 0, 1));
+    }
+
+    @Test
+    public void testGetWithoutContext() {
+        System.out.println("getWithoutContext");
+        assertNotSame(RouteLimiters.get(null), RouteLimiters.get(null));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.response;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link JSObjectSerializer} with Jackson's default serialization of
+ * Javascript objects, as maps, for a nested payload. Run the main method with
+ * the test classpath, the GC profiler reports the bytes allocated per
+ * operation.
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JSObjectSerializerBenchmark {
+
+    private final static OutputStream NULL_STREAM = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private final ObjectMapper mapMapper = new ObjectMapper();
+    private final ObjectMapper jsMapper = new ObjectMapper().registerModule(
+            JSObjectSerializer.MODULE);
+
+    private Object payload;
+
+    @Setup
+    public void setUp() throws ScriptException {
+        payload = new ScriptEngineManager().getEngineByName("js").eval(
+                "var items = [];\n"
+                + "for (var i = 0; i < 50; i++) {\n"
+                + "    items.push({id: i, name: 'item' + i, price: i * 1.25,\n"
+                + "        available: i % 2 === 0, tags: ['a', 'b', 'c'],\n"
+                + "        owner: {id: i * 10, name: 'owner' + i,\n"
+                + "            address: {city: 'city', zip: '12345'}}});\n"
+                + "}\n"
+                + "({total: items.length, page: 1, items: items})");
+    }
+
+    @Benchmark
+    public void mapSerializer() throws IOException {
+        mapMapper.writeValue(NULL_STREAM, payload);
+    }
+
+    @Benchmark
+    public void jsObjectSerializer() throws IOException {
+        jsMapper.writeValue(NULL_STREAM, payload);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JSObjectSerializerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
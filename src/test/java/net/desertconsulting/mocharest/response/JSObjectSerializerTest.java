@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.response;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class JSObjectSerializerTest {
+
+    private final static ScriptEngine ENGINE = new ScriptEngineManager().
+            getEngineByName("js");
+
+    private final static ObjectMapper JSON_MAPPER = new ObjectMapper().
+            registerModule(JSObjectSerializer.MODULE);
+
+    @Test
+    public void testSerializeObject() throws Exception {
+        System.out.println("serializeObject");
+        assertEquals("{\"s\":\"a1\",\"i\":1,\"d\":1.5,\"b\":true,\"n\":null,"
+                + "\"o\":{\"x\":\"y\"}}", serialize(
+                        "({s: 'a' + 1, i: 1, d: 1.5, b: true, n: null, o: {x: 'y'}})"));
+    }
+
+    @Test
+    public void testSerializeArray() throws Exception {
+        System.out.println("serializeArray");
+        assertEquals("[1,\"a\",[2],{\"b\":3},null,null]", serialize(
+                "[1, 'a', [2], {b: 3}, undefined, function () {}]"));
+        assertEquals("{\"a\":[]}", serialize("({a: []})"));
+    }
+
+    @Test
+    public void testSerializeUndefinedAndFunctions() throws Exception {
+        System.out.println("serializeUndefinedAndFunctions");
+        assertEquals("{\"a\":1,\"u\":null}", serialize(
+                "({a: 1, u: undefined, f: function () {}})"));
+    }
+
+    @Test
+    public void testSerializeNumbers() throws Exception {
+        System.out.println("serializeNumbers");
+        assertEquals("[1,0,-3,0.1,9007199254740991,1.0E21,null,null]",
+                serialize("[2 / 2, -0, -6 / 2, 0.1, 9007199254740991, 1e21, "
+                        + "NaN, 1 / 0]"));
+    }
+
+    @Test
+    public void testSerializeDate() throws Exception {
+        System.out.println("serializeDate");
+        assertEquals("{\"d\":\"1970-01-01T00:00:00.000Z\",\"i\":null}",
+                serialize("({d: new Date(0), i: new Date(NaN)})"));
+    }
+
+    @Test
+    public void testSerializeToXml() throws Exception {
+        System.out.println("serializeToXml");
+        String result = new XmlMapper().registerModule(JSObjectSerializer.MODULE).
+                writeValueAsString(ENGINE.eval("({a: 1, u: undefined, b: {c: 'd'}})"));
+        assertTrue(result, result.endsWith("><a>1</a><u/><b><c>d</c></b></ScriptObjectMirror>"));
+    }
+
+    private static String serialize(String script) throws ScriptException,
+            java.io.IOException {
+        return JSON_MAPPER.writeValueAsString(ENGINE.eval(script));
+    }
+}
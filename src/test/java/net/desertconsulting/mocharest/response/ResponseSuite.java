@@ -23,6 +23,6 @@ import org.junit.runners.Suite;
  * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({net.desertconsulting.mocharest.response.MochaResponseTest.class})
+@Suite.SuiteClasses({net.desertconsulting.mocharest.response.MochaResponseTest.class, net.desertconsulting.mocharest.response.JSObjectSerializerTest.class})
 public class ResponseSuite {
 }
@@ -16,6 +16,8 @@
 package net.desertconsulting.mocharest.servlet;
 
 import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -24,10 +26,15 @@ import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.core.MediaType;
 import mockit.Expectations;
 import mockit.Mocked;
+import mockit.Verifications;
 import net.desertconsulting.mocharest.MockedRequest;
 import net.desertconsulting.mocharest.MockedResponse;
 import net.desertconsulting.mocharest.RestEngine;
+import net.desertconsulting.mocharest.RestEngineImpl;
+import net.desertconsulting.mocharest.js.MochaJsEngine;
+import net.desertconsulting.mocharest.js.MochaJsEnginePool;
 import org.junit.Test;
+import static org.junit.Assert.*;
 
 /**
  *
@@ -54,6 +61,31 @@ public class MochaRestServletTest {
         instance.init(config);
     }
 
+    @Test
+    public void testInitWithEnginePool(@Mocked final ServletConfig config, @Mocked final ServletContext context) throws Exception {
+
+        final ByteArrayInputStream stream = new ByteArrayInputStream("var test = 1;".getBytes());
+
+        new Expectations() {
+            {
+                context.getResourceAsStream("/index.js");
+                returns(stream);
+
+                context.getInitParameter(MochaJsEnginePool.POOL_SIZE_PARAM);
+                returns("2");
+
+                config.getServletContext();
+                returns(context);
+            }
+        };
+        System.out.println("initWithEnginePool");
+        MochaRestServlet instance = new MochaRestServlet();
+        instance.init(config);
+        assertNull(instance.engine);
+        assertEquals(2, instance.pool.getSize());
+        assertEquals(2, instance.pool.getAvailable());
+    }
+
     @Test(expected = ServletException.class)
     public void testInitWithScriptError(@Mocked final ServletConfig config, @Mocked final ServletContext context) throws Exception {
 
@@ -127,4 +159,137 @@ public class MochaRestServletTest {
         instance.service(req, resp);
     }
 
+    @Test
+    public void testServiceOverLimit(@Mocked final HttpServletResponse resp,
+            @Mocked final ServletConfig config, @Mocked final ServletContext context) throws Exception {
+        System.out.println("serviceOverLimit");
+
+        final ByteArrayInputStream stream = new ByteArrayInputStream(("$mr.get('/test', "
+                + "{contentType: 'application/json', maxConcurrent: 1, retryAfter: 2}, "
+                + "function () { return 1; });").getBytes());
+
+        new Expectations() {
+            {
+                context.getResourceAsStream("/index.js");
+                returns(stream);
+
+                config.getServletContext();
+                returns(context);
+            }
+        };
+
+        MochaRestServlet instance = new MochaRestServlet();
+        instance.init(config);
+        ((RestEngineImpl) instance.engine.getRestEngine()).getRouteLimiters()
+                .get("GET /test").acquire();
+
+        HttpServletRequest req = MockedRequest.create()
+                .withMimeType(MediaType.APPLICATION_JSON)
+                .withPath("/test")
+                .withMethod(RestEngine.GET_METHOD)
+                .build().getMockInstance();
+        instance.service(req, resp);
+
+        new Verifications() {
+            {
+                resp.addHeader("Retry-After", "2");
+                resp.sendError(503, anyString);
+            }
+        };
+    }
+
+    @Test
+    public void testReload(@Mocked final ServletConfig config, @Mocked final ServletContext context) throws Exception {
+        System.out.println("reload");
+
+        final ByteArrayInputStream stream = new ByteArrayInputStream("print('test');".getBytes());
+
+        new Expectations() {
+            {
+                context.getResourceAsStream("/index.js");
+                returns(stream);
+
+                config.getServletContext();
+                returns(context);
+            }
+        };
+
+        MochaRestServlet instance = new MochaRestServlet();
+        instance.init(config);
+        MochaJsEngine previous = instance.engine;
+
+        Path index = Files.createTempFile("index", ".js");
+        try {
+            Files.write(index, "$mr.get('/reloaded', function () { return {reloaded: true}; });".getBytes());
+            assertTrue(instance.reload(index));
+            assertNotSame(previous, instance.engine);
+
+            Files.write(index, "nonexistingfunction('test');".getBytes());
+            MochaJsEngine reloaded = instance.engine;
+            assertFalse(instance.reload(index));
+            assertSame(reloaded, instance.engine);
+        } finally {
+            Files.delete(index);
+        }
+
+        HttpServletRequest req = MockedRequest.create()
+                .withMimeType(MediaType.APPLICATION_JSON)
+                .withPath("/reloaded")
+                .withMethod(RestEngine.GET_METHOD)
+                .build().getMockInstance();
+        MockedResponse resp = MockedResponse.create().build();
+        instance.service(req, resp.getMockInstance());
+        assertEquals("{\"reloaded\":true}", resp.bos.toString());
+    }
+
+    @Test
+    public void testReloadWithWarmUp(@Mocked final ServletConfig config, @Mocked final ServletContext context) throws Exception {
+        System.out.println("reloadWithWarmUp");
+
+        final ByteArrayInputStream stream = new ByteArrayInputStream("print('test');".getBytes());
+
+        new Expectations() {
+            {
+                context.getResourceAsStream("/index.js");
+                returns(stream);
+
+                config.getServletContext();
+                returns(context);
+            }
+        };
+
+        MochaRestServlet instance = new MochaRestServlet();
+        instance.init(config);
+
+        Path index = Files.createTempFile("index", ".js");
+        try {
+            Files.write(index, ("var warm = false;\n"
+                    + "$mr.get('/warm', function () { return {warm: warm}; });\n"
+                    + "$mr.warmUp(function () { warm = true; });").getBytes());
+            assertTrue(instance.reload(index));
+            MochaJsEngine warmed = instance.engine;
+
+            Files.write(index, "$mr.warmUp(function () { throw 'cold'; });".
+                    getBytes());
+            assertFalse(instance.reload(index));
+            assertSame(warmed, instance.engine);
+
+            Files.write(index, ("$mr.warmUp(function () {\n"
+                    + "    var d = new Deferred(); d.reject('cold'); return d;\n"
+                    + "});").getBytes());
+            assertFalse(instance.reload(index));
+            assertSame(warmed, instance.engine);
+        } finally {
+            Files.delete(index);
+        }
+
+        HttpServletRequest req = MockedRequest.create()
+                .withMimeType(MediaType.APPLICATION_JSON)
+                .withPath("/warm")
+                .withMethod(RestEngine.GET_METHOD)
+                .build().getMockInstance();
+        MockedResponse resp = MockedResponse.create().build();
+        instance.service(req, resp.getMockInstance());
+        assertEquals("{\"warm\":true}", resp.bos.toString());
+    }
 }
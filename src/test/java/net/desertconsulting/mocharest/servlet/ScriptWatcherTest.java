@@ -0,0 +1,50 @@
+/*
+ * Copyright 2017 Patrizio Bruno <desertconsulting@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.desertconsulting.mocharest.servlet;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
+ */
+public class ScriptWatcherTest {
+
+    @Test
+    public void testChange() throws Exception {
+        System.out.println("change");
+        Path dir = Files.createTempDirectory("mocharest-watch");
+        Path lib = Files.createDirectory(dir.resolve("lib"));
+        Semaphore changes = new Semaphore(0);
+        try (ScriptWatcher instance = new ScriptWatcher(dir, 100,
+                changes::release)) {
+            Files.write(dir.resolve("index.js"), "print(1);".getBytes());
+            Files.write(dir.resolve("index.js"), "print(2);".getBytes());
+            assertTrue(changes.tryAcquire(30, TimeUnit.SECONDS));
+
+            Files.write(lib.resolve("module.js"), "print(3);".getBytes());
+            assertTrue(changes.tryAcquire(30, TimeUnit.SECONDS));
+
+            Files.write(dir.resolve("readme.txt"), "test".getBytes());
+            assertFalse(changes.tryAcquire(1, TimeUnit.SECONDS));
+        }
+    }
+}
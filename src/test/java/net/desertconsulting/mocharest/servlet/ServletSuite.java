@@ -23,6 +23,6 @@ import org.junit.runners.Suite;
  * @author Patrizio Bruno {@literal <desertconsulting@gmail.com>}
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({net.desertconsulting.mocharest.servlet.MochaRestServletTest.class})
+@Suite.SuiteClasses({net.desertconsulting.mocharest.servlet.MochaRestServletTest.class, net.desertconsulting.mocharest.servlet.ScriptWatcherTest.class})
 public class ServletSuite {
 }